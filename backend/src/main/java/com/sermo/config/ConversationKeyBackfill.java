@@ -0,0 +1,81 @@
+package com.sermo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills conversation_key on direct message rows written before the column existed,
+ * and stores older DM key rows with the lower user id first. Runs in small batches
+ * after startup and is a no-op once done.
+ *
+ * Older code could store a pair's DM key once in each direction. The row already
+ * in (lower, higher) order wins and its mirror is deleted; every other row is
+ * swapped into that order.
+ */
+@Component
+public class ConversationKeyBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationKeyBackfill.class);
+
+    private static final String DELETE_MIRRORED_DM_KEYS_SQL =
+        "DELETE FROM dm_keys WHERE id IN (SELECT d.id FROM dm_keys d WHERE d.user1_id > d.user2_id AND EXISTS " +
+        "(SELECT 1 FROM dm_keys o WHERE o.user1_id = d.user2_id AND o.user2_id = d.user1_id) LIMIT ?)";
+
+    private static final String CANONICAL_DM_KEYS_SQL =
+        "UPDATE dm_keys SET user1_id = user2_id, user2_id = user1_id, " +
+        "encrypted_key_user1 = encrypted_key_user2, encrypted_key_user2 = encrypted_key_user1 " +
+        "WHERE id IN (SELECT id FROM dm_keys WHERE user1_id > user2_id LIMIT ?)";
+
+    private static final String KEY_SQL =
+        "LEAST(%1$s, %2$s)::text || ':' || GREATEST(%1$s, %2$s)::text";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sermo.migrations.conversation-key-backfill:true}")
+    private boolean enabled;
+
+    @Value("${sermo.migrations.batch-size:5000}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            backfill("direct_messages", "sender_id", "receiver_id");
+        } catch (RuntimeException e) {
+            log.error("Backfilling direct_messages.conversation_key failed; it will be retried on the next start", e);
+        }
+        try {
+            canonicalizeDMKeys();
+        } catch (RuntimeException e) {
+            log.error("Reordering dm_keys user columns failed; it will be retried on the next start", e);
+        }
+    }
+
+    void canonicalizeDMKeys() {
+        // Mirrors go first, so no swap can collide with the unique (user1_id, user2_id)
+        while (jdbcTemplate.update(DELETE_MIRRORED_DM_KEYS_SQL, batchSize) > 0) {
+            // Keep going until no rows are left
+        }
+        while (jdbcTemplate.update(CANONICAL_DM_KEYS_SQL, batchSize) > 0) {
+            // Keep going until no rows are left
+        }
+    }
+
+    private void backfill(String table, String userA, String userB) {
+        String sql = "UPDATE " + table + " SET conversation_key = " + String.format(KEY_SQL, userA, userB) +
+                     " WHERE id IN (SELECT id FROM " + table + " WHERE conversation_key IS NULL LIMIT ?)";
+        while (jdbcTemplate.update(sql, batchSize) > 0) {
+            // Keep going until no rows are left
+        }
+    }
+}
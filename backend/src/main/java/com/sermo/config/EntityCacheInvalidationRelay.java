@@ -0,0 +1,135 @@
+package com.sermo.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Keeps the in-process second-level caches of all nodes consistent. Hibernate
+ * invalidates the local cache itself when a cached entity is written; this relays
+ * each committed write over Redis so other nodes evict the entity and mark its
+ * tables as updated, exactly as a local write would. Only cached queries over those
+ * tables go stale, e.g. a server list that must now include a joined server.
+ */
+@Component
+public class EntityCacheInvalidationRelay implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener, MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityCacheInvalidationRelay.class);
+
+    private static final String TOPIC = "sermo:cache:invalidate";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${sermo.cache.cluster-invalidation:true}")
+    private boolean enabled;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private SessionFactoryImplementor sessionFactory;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        listenerContainer.addMessageListener(this, new ChannelTopic(TOPIC));
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.canWriteToCache();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        publish(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publish(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publish(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    private void publish(EntityPersister persister, Object id) {
+        // Cached entities all have numeric ids
+        String payload = nodeId + " " + persister.getEntityName() + " " + id;
+        try {
+            redisTemplate.convertAndSend(TOPIC, payload);
+        } catch (RuntimeException e) {
+            // Other nodes catch up when their cache entries expire
+            log.warn("Failed to relay cache invalidation for {} {}", persister.getEntityName(), id, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(" ");
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        String entityName = parts[1];
+        try {
+            EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityName);
+            sessionFactory.getCache().evictEntityData(entityName, Long.parseLong(parts[2]));
+            // Bump the update timestamps of the entity's tables; queries over other tables stay cached
+            try (SessionImplementor session = sessionFactory.openSession()) {
+                sessionFactory.getCache().getTimestampsCache().invalidate(persister.getPropertySpaces(), session);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply cache invalidation for {} {}", entityName, parts[2], e);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.sermo.config;
 
-import com.sermo.handler.ChatWebSocketHandler;
+import com.sermo.handler.ProtocolRoutingWebSocketHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -12,11 +12,11 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 public class WebSocketConfig implements WebSocketConfigurer {
 
     @Autowired
-    private ChatWebSocketHandler chatWebSocketHandler;
+    private ProtocolRoutingWebSocketHandler protocolRoutingWebSocketHandler;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+        registry.addHandler(protocolRoutingWebSocketHandler, "/ws/chat")
                 .setAllowedOrigins("*");
     }
 }
@@ -0,0 +1,35 @@
+package com.sermo.controller;
+
+import com.sermo.dto.BootstrapDTO;
+import com.sermo.service.BootstrapService;
+import com.sermo.util.AuthUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/bootstrap")
+@CrossOrigin(origins = "*")
+public class BootstrapController {
+
+    @Autowired
+    private BootstrapService bootstrapService;
+
+    @Autowired
+    private AuthUtil authUtil;
+
+    /**
+     * Servers, channels, channel keys and presence in one response, replacing the
+     * per-server and per-channel requests a client would otherwise make on startup.
+     */
+    @GetMapping
+    public ResponseEntity<BootstrapDTO> getBootstrap(Authentication authentication) {
+        Long userId = authUtil.getUserId(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(bootstrapService.getBootstrap(userId, authentication.getName()));
+    }
+}
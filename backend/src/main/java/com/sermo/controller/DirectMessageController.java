@@ -0,0 +1,32 @@
+package com.sermo.controller;
+
+import com.sermo.dto.DirectMessagePageDTO;
+import com.sermo.service.DirectMessageService;
+import com.sermo.util.AuthUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/dms")
+@CrossOrigin(origins = "*")
+public class DirectMessageController {
+
+    @Autowired
+    private DirectMessageService directMessageService;
+
+    @Autowired
+    private AuthUtil authUtil;
+
+    @GetMapping("/{otherUserId}/history")
+    public ResponseEntity<DirectMessagePageDTO> getConversationHistory(
+            Authentication authentication,
+            @PathVariable Long otherUserId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        Long userId = authUtil.getUserId(authentication);
+        return ResponseEntity.ok(directMessageService.getConversationHistory(userId, otherUserId, before, after, limit));
+    }
+}
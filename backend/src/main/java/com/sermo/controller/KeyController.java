@@ -1,16 +1,22 @@
 package com.sermo.controller;
 
+import com.sermo.dto.ChannelKeyBatchRequest;
+import com.sermo.dto.ChannelKeyDTO;
 import com.sermo.model.ChannelKey;
+import com.sermo.model.DMKey;
 import com.sermo.repository.ChannelKeyRepository;
-import com.sermo.repository.ChannelRepository;
-import com.sermo.repository.UserRepository;
+import com.sermo.repository.DMKeyRepository;
+import com.sermo.service.ChannelKeyService;
 import com.sermo.util.AuthUtil;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,10 +28,10 @@ public class KeyController {
     private ChannelKeyRepository channelKeyRepository;
 
     @Autowired
-    private ChannelRepository channelRepository;
+    private DMKeyRepository dmKeyRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private ChannelKeyService channelKeyService;
 
     @Autowired
     private AuthUtil authUtil;
@@ -37,21 +43,67 @@ public class KeyController {
             @RequestBody Map<String, String> request) {
         Long userId = authUtil.getUserId(authentication);
         String encryptedKey = request.get("encryptedKey");
+        if (encryptedKey == null) {
+            throw new RuntimeException("encryptedKey is required");
+        }
 
-        ChannelKey channelKey = new ChannelKey();
-        channelKey.setChannel(channelRepository.findById(channelId)
-            .orElseThrow(() -> new RuntimeException("Channel not found")));
-        channelKey.setUser(userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found")));
-        channelKey.setEncryptedKey(encryptedKey);
-
-        channelKeyRepository.save(channelKey);
+        channelKeyService.shareKey(channelId, userId, encryptedKey);
 
         Map<String, String> response = new HashMap<>();
         response.put("status", "ok");
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Distributes a channel key to many members at once, e.g. to new members.
+     * Other members who already have a key keep it; count is the number written.
+     */
+    @PostMapping("/channel/{channelId}/batch")
+    public ResponseEntity<Map<String, Object>> shareChannelKeys(
+            Authentication authentication,
+            @PathVariable Long channelId,
+            @Valid @RequestBody ChannelKeyBatchRequest request) {
+        Long userId = authUtil.getUserId(authentication);
+        int count = channelKeyService.shareKeys(channelId, userId, toKeyMap(request));
+        return ResponseEntity.ok(countResponse(count));
+    }
+
+    /**
+     * Replaces members' copies of a channel key after a rotation. Server owner only.
+     */
+    @PostMapping("/channel/{channelId}/rotate")
+    public ResponseEntity<Map<String, Object>> rotateChannelKeys(
+            Authentication authentication,
+            @PathVariable Long channelId,
+            @Valid @RequestBody ChannelKeyBatchRequest request) {
+        Long userId = authUtil.getUserId(authentication);
+        int count = channelKeyService.rotateKeys(channelId, userId, toKeyMap(request));
+        return ResponseEntity.ok(countResponse(count));
+    }
+
+    private static Map<Long, String> toKeyMap(ChannelKeyBatchRequest request) {
+        // A user listed twice keeps the last key
+        Map<Long, String> keys = new LinkedHashMap<>();
+        request.getKeys().forEach(entry -> keys.put(entry.getUserId(), entry.getEncryptedKey()));
+        return keys;
+    }
+
+    private static Map<String, Object> countResponse(int count) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "ok");
+        response.put("count", count);
+        return response;
+    }
+
+    /**
+     * All channel keys of the current user, so clients can bootstrap in one request.
+     */
+    @GetMapping
+    public ResponseEntity<List<ChannelKeyDTO>> getMyKeys(Authentication authentication) {
+        Long userId = authUtil.getUserId(authentication);
+        return ResponseEntity.ok(channelKeyService.getUserKeys(userId));
+    }
+
     @GetMapping("/channel/{channelId}")
     public ResponseEntity<Map<String, String>> getChannelKey(
             Authentication authentication,
@@ -67,5 +119,25 @@ public class KeyController {
         }
         return ResponseEntity.ok(response);
     }
-}
 
+    /**
+     * The current user's copy of the key for their direct messages with another user.
+     */
+    @GetMapping("/dm/{otherUserId}")
+    public ResponseEntity<Map<String, String>> getDMKey(
+            Authentication authentication,
+            @PathVariable Long otherUserId) {
+        Long userId = authUtil.getUserId(authentication);
+
+        DMKey dmKey = dmKeyRepository.findByUser1IdAndUser2Id(Math.min(userId, otherUserId), Math.max(userId, otherUserId))
+            .orElse(null);
+
+        Map<String, String> response = new HashMap<>();
+        if (dmKey != null) {
+            response.put("encryptedKey", dmKey.getUser1().getId().equals(userId)
+                ? dmKey.getEncryptedKeyUser1()
+                : dmKey.getEncryptedKeyUser2());
+        }
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,11 +1,15 @@
 package com.sermo.controller;
 
+import com.sermo.dto.MessageChangePageDTO;
 import com.sermo.dto.MessageDTO;
+import com.sermo.service.MessageExportService;
 import com.sermo.service.MessageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -18,11 +22,54 @@ public class MessageController {
     @Autowired
     private MessageService messageService;
 
+    @Autowired
+    private MessageExportService messageExportService;
+
     @GetMapping("/channel/{channelId}")
     public ResponseEntity<List<MessageDTO>> getChannelMessages(@PathVariable Long channelId) {
         return ResponseEntity.ok(messageService.getChannelMessages(channelId));
     }
 
+    @GetMapping("/channel/{channelId}/history")
+    public ResponseEntity<?> getChannelHistory(
+            @PathVariable Long channelId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        if (before == null && after == null) {
+            // Latest page, usually served from pre-serialized cache entries
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(messageService.getLatestHistoryJson(channelId, limit));
+        }
+        return ResponseEntity.ok(messageService.getChannelHistory(channelId, before, after, limit));
+    }
+
+    @GetMapping("/channel/{channelId}/changes")
+    public ResponseEntity<MessageChangePageDTO> getChanges(
+            @PathVariable Long channelId,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(messageService.getChanges(channelId, since, limit));
+    }
+
+    @GetMapping("/channel/{channelId}/export")
+    public ResponseEntity<StreamingResponseBody> exportChannel(
+            @PathVariable Long channelId,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        if ("binary".equals(format)) {
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(out -> messageExportService.exportBinary(channelId, out));
+        }
+        if (!"ndjson".equals(format)) {
+            throw new RuntimeException("Unsupported export format: " + format);
+        }
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(out -> messageExportService.exportNdjson(channelId, out));
+    }
+
     @Autowired
     private com.sermo.util.AuthUtil authUtil;
 
@@ -38,5 +85,13 @@ public class MessageController {
         MessageDTO message = messageService.editMessage(messageId, userId, encryptedContent, nonce);
         return ResponseEntity.ok(message);
     }
+
+    @DeleteMapping("/{messageId}")
+    public ResponseEntity<Void> deleteMessage(Authentication authentication, @PathVariable Long messageId) {
+        Long userId = authUtil.getUserId(authentication);
+
+        messageService.deleteMessage(messageId, userId);
+        return ResponseEntity.noContent().build();
+    }
 }
 
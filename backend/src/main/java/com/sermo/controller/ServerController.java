@@ -1,6 +1,7 @@
 package com.sermo.controller;
 
 import com.sermo.dto.ServerDTO;
+import com.sermo.dto.ServerPresenceDTO;
 import com.sermo.service.ServerService;
 import com.sermo.util.AuthUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,6 +47,14 @@ public class ServerController {
         return ResponseEntity.ok(serverService.getUserServers(userId));
     }
 
+    @GetMapping("/{serverId}/online")
+    public ResponseEntity<ServerPresenceDTO> getOnlineMembers(
+            @PathVariable Long serverId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(serverService.getOnlineMembers(serverId, after, limit));
+    }
+
     @PostMapping("/{serverId}/join")
     public ResponseEntity<ServerDTO> joinServer(
             Authentication authentication,
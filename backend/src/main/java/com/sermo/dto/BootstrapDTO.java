@@ -0,0 +1,19 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BootstrapDTO {
+    private Long userId;
+    private String username;
+    private List<ServerDTO> servers;
+    private List<ChannelDTO> channels; // channels of all servers above
+    private Map<Long, String> keys; // channelId -> encrypted channel key
+    private Map<Long, Long> online; // serverId -> users currently online
+}
@@ -0,0 +1,22 @@
+package com.sermo.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class ChannelKeyBatchRequest {
+    @NotEmpty
+    private List<@Valid Entry> keys;
+
+    @Data
+    public static class Entry {
+        @NotNull
+        private Long userId;
+
+        @NotNull
+        private String encryptedKey;
+    }
+}
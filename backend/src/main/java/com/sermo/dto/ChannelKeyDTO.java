@@ -0,0 +1,14 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChannelKeyDTO {
+    private Long channelId;
+    private Long userId;
+    private String encryptedKey; // Channel key encrypted with the user's public key (base64)
+}
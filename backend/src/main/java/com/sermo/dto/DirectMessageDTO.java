@@ -0,0 +1,20 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectMessageDTO {
+    private Long id;
+    private Long senderId;
+    private String senderUsername;
+    private Long receiverId;
+    private String encryptedContent;
+    private String nonce;
+    private LocalDateTime createdAt;
+    private LocalDateTime editedAt;
+}
@@ -0,0 +1,14 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectMessagePageDTO {
+    private List<DirectMessageDTO> messages; // oldest first
+    private String nextCursor; // null when there is nothing further in the requested direction
+}
@@ -0,0 +1,14 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageChangeDTO {
+    private String type; // CREATE, EDIT or DELETE
+    private Long version;
+    private MessageDTO message; // content is null for DELETE
+}
@@ -0,0 +1,15 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageChangePageDTO {
+    private List<MessageChangeDTO> changes; // ascending by version
+    private Long version; // pass as "since" to fetch the next page
+    private boolean hasMore;
+}
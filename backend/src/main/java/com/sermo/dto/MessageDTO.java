@@ -17,5 +17,8 @@ public class MessageDTO {
     private String nonce;
     private LocalDateTime createdAt;
     private LocalDateTime editedAt;
+    private Long seq;
+    private Long version;
+    private LocalDateTime deletedAt;
 }
 
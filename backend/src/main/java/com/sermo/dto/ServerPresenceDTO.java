@@ -0,0 +1,16 @@
+package com.sermo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServerPresenceDTO {
+    private Long serverId;
+    private Long onlineCount;
+    private List<Long> onlineUserIds; // ascending
+    private Long nextCursor; // pass as "after" for the next page; null on the last page
+}
@@ -0,0 +1,80 @@
+package com.sermo.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handler for clients that negotiate the binary subprotocol. Frames follow
+ * {@link BinaryFrameCodec}; everything past decoding is shared with the JSON handler.
+ */
+@Component
+public class BinaryChatWebSocketHandler extends BinaryWebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryChatWebSocketHandler.class);
+
+    public static final String SUBPROTOCOL = "sermo.binary.v1";
+
+    @Autowired
+    private ChatEventProcessor chatEventProcessor;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        chatEventProcessor.connect(session, true);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        try {
+            Long userId = chatEventProcessor.getUserId(session);
+            if (userId == null) {
+                return;
+            }
+
+            ByteBuffer buffer = message.getPayload();
+            byte type = buffer.get();
+            if (type == BinaryFrameCodec.RESUME) {
+                chatEventProcessor.resume(session, BinaryFrameCodec.readResume(buffer));
+                return;
+            }
+            Long channelId = BinaryFrameCodec.readChannelId(buffer);
+
+            switch (type) {
+                case BinaryFrameCodec.MESSAGE:
+                    String nonce = BinaryFrameCodec.readShortField(buffer);
+                    String encryptedContent = BinaryFrameCodec.readLongField(buffer);
+                    chatEventProcessor.sendMessage(session, userId, channelId, encryptedContent, nonce);
+                    break;
+                case BinaryFrameCodec.TYPING:
+                    chatEventProcessor.typing(userId, channelId);
+                    break;
+                case BinaryFrameCodec.TYPING_STOP:
+                    chatEventProcessor.stopTyping(userId, channelId);
+                    break;
+                case BinaryFrameCodec.PRESENCE:
+                    chatEventProcessor.presence(userId, channelId, buffer.get() == 1);
+                    break;
+                case BinaryFrameCodec.SUBSCRIBE:
+                    chatEventProcessor.subscribe(session, channelId);
+                    break;
+                case BinaryFrameCodec.UNSUBSCRIBE:
+                    chatEventProcessor.unsubscribe(session, channelId);
+                    break;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to handle binary frame on session {}", session.getId(), e);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        chatEventProcessor.disconnect(session);
+    }
+}
@@ -0,0 +1,122 @@
+package com.sermo.handler;
+
+import com.sermo.dto.MessageDTO;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact frame format for the binary subprotocol. All integers are big-endian.
+ * Ciphertext and nonces travel as raw bytes instead of base64 text.
+ *
+ * <pre>
+ * Client -> server
+ *   MESSAGE      u8 type | i64 channelId | u16 nonceLen | nonce | u32 ciphertextLen | ciphertext
+ *   TYPING       u8 type | i64 channelId
+ *   PRESENCE     u8 type | i64 channelId | u8 online(1)/offline(0)
+ *   SUBSCRIBE    u8 type | i64 channelId
+ *   UNSUBSCRIBE  u8 type | i64 channelId
+ *   TYPING_STOP  u8 type | i64 channelId
+ *   RESUME       u8 type | u16 count | (i64 channelId | i64 lastSeq)*
+ *
+ * Server -> client
+ *   MESSAGE      u8 type | i64 id | i64 channelId | i64 senderId | i64 createdAt | i64 editedAt (0 if unset)
+ *                | u16 usernameLen | username (UTF-8) | u16 nonceLen | nonce | u32 ciphertextLen | ciphertext
+ *                | i64 seq (0 if unset)
+ *   TYPING       u8 type | i64 channelId | i64 userId
+ *   TYPING_STOP  u8 type | i64 channelId | i64 userId
+ *   BATCH        u8 type | (u32 frameLen | frame)*   (sessions that opted into coalescing)
+ * </pre>
+ *
+ * Timestamps are epoch milliseconds. Events without a binary encoding are sent
+ * to binary sessions as regular JSON text frames.
+ */
+public final class BinaryFrameCodec {
+
+    public static final byte MESSAGE = 1;
+    public static final byte TYPING = 2;
+    public static final byte PRESENCE = 3;
+    public static final byte SUBSCRIBE = 4;
+    public static final byte UNSUBSCRIBE = 5;
+    public static final byte BATCH = 6;
+    public static final byte TYPING_STOP = 7;
+    public static final byte RESUME = 8;
+
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private BinaryFrameCodec() {
+    }
+
+    public static byte[] encodeMessage(MessageDTO message) {
+        byte[] username = message.getSenderUsername() != null
+            ? message.getSenderUsername().getBytes(StandardCharsets.UTF_8)
+            : new byte[0];
+        byte[] nonce = BASE64_DECODER.decode(message.getNonce());
+        byte[] ciphertext = BASE64_DECODER.decode(message.getEncryptedContent());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * 5 + 2 + username.length + 2 + nonce.length + 4 + ciphertext.length + 8);
+        buffer.put(MESSAGE);
+        buffer.putLong(message.getId());
+        buffer.putLong(message.getChannelId());
+        buffer.putLong(message.getSenderId());
+        buffer.putLong(toEpochMillis(message.getCreatedAt()));
+        buffer.putLong(toEpochMillis(message.getEditedAt()));
+        buffer.putShort((short) username.length).put(username);
+        buffer.putShort((short) nonce.length).put(nonce);
+        buffer.putInt(ciphertext.length).put(ciphertext);
+        buffer.putLong(message.getSeq() != null ? message.getSeq() : 0L);
+        return buffer.array();
+    }
+
+    public static byte[] encodeTyping(byte type, Long channelId, Long userId) {
+        return ByteBuffer.allocate(1 + 8 + 8)
+            .put(type)
+            .putLong(channelId)
+            .putLong(userId)
+            .array();
+    }
+
+    public static long readChannelId(ByteBuffer buffer) {
+        return buffer.getLong();
+    }
+
+    /** Reads the channelId -> last seen sequence pairs of a RESUME frame. */
+    public static Map<Long, Long> readResume(ByteBuffer buffer) {
+        int count = Short.toUnsignedInt(buffer.getShort());
+        Map<Long, Long> lastSeen = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            lastSeen.put(buffer.getLong(), buffer.getLong());
+        }
+        return lastSeen;
+    }
+
+    /** Reads a u16-prefixed field and returns it base64 encoded, as stored and served to JSON clients. */
+    public static String readShortField(ByteBuffer buffer) {
+        return readField(buffer, Short.toUnsignedInt(buffer.getShort()));
+    }
+
+    /** Reads a u32-prefixed field and returns it base64 encoded. */
+    public static String readLongField(ByteBuffer buffer) {
+        return readField(buffer, buffer.getInt());
+    }
+
+    private static String readField(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return BASE64_ENCODER.encodeToString(bytes);
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+}
@@ -0,0 +1,220 @@
+package com.sermo.handler;
+
+import com.sermo.dto.MessageDTO;
+import com.sermo.service.RecentMessageCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers channel events to local subscribers and relays them to the other
+ * nodes over Redis pub/sub. Each event is published once to a per-channel topic,
+ * and a node only listens on topics for channels it has local subscribers for.
+ * Events addressed to a user (direct messages) work the same way over per-user
+ * topics, listened on while the user has a local session.
+ *
+ * Relayed payload: "{originNodeId} {publishedAtMillis}\n" followed by the JSON frame bytes.
+ */
+@Component
+public class ChannelBroadcaster implements MessageListener, SessionRegistry.ChannelListener, SessionRegistry.UserListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ChannelBroadcaster.class);
+
+    private static final String TOPIC_PREFIX = "chat:channel:";
+    private static final String USER_TOPIC_PREFIX = "chat:user:";
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private FrameEncoder frameEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Value("${sermo.websocket.cluster-fanout:true}")
+    private boolean clusterFanout;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Channels and users whose topic this node currently listens on, guarded by this
+    private final Set<Long> listening = new HashSet<>();
+    private final Set<Long> listeningUsers = new HashSet<>();
+
+    private Counter published;
+    private Counter received;
+    private Counter publishFailures;
+    private Timer hopLatency;
+
+    @PostConstruct
+    void init() {
+        published = meterRegistry.counter("sermo.ws.cluster.published");
+        received = meterRegistry.counter("sermo.ws.cluster.received");
+        publishFailures = meterRegistry.counter("sermo.ws.cluster.publish.failures");
+        hopLatency = Timer.builder("sermo.ws.cluster.hop.latency")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+
+        if (clusterFanout) {
+            sessionRegistry.setChannelListener(this);
+            sessionRegistry.setUserListener(this);
+            // Other nodes write to channels too; cache only what this node hears about
+            recentMessageCache.setRequireTracking(true);
+        }
+    }
+
+    public void broadcast(Long channelId, OutboundFrame frame) {
+        deliverLocally(channelId, frame);
+        if (clusterFanout) {
+            publish(channelId, frame);
+        }
+    }
+
+    /**
+     * Delivers an event to every session of one user, on whichever node they are connected.
+     */
+    public void sendToUser(Long userId, OutboundFrame frame) {
+        sessionRegistry.getUserSessions(userId).forEach(outbound -> outbound.offer(frame));
+        if (clusterFanout) {
+            publish(USER_TOPIC_PREFIX + userId, frame);
+        }
+    }
+
+    private void deliverLocally(Long channelId, OutboundFrame frame) {
+        sessionRegistry.getSubscribers(channelId).forEach(outbound -> outbound.offer(frame));
+    }
+
+    private void publish(Long channelId, OutboundFrame frame) {
+        publish(TOPIC_PREFIX + channelId, frame);
+    }
+
+    private void publish(String topicName, OutboundFrame frame) {
+        byte[] header = (nodeId + " " + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] body = frame.getText().asBytes();
+        byte[] payload = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, payload, header.length, body.length);
+        byte[] topic = topicName.getBytes(StandardCharsets.UTF_8);
+
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(topic, payload));
+            published.increment();
+        } catch (RuntimeException e) {
+            // Local subscribers already have the event; other nodes miss it
+            publishFailures.increment();
+            log.warn("Failed to relay {} bytes to {}", payload.length, topicName, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        byte[] payload = message.getBody();
+        int newline = indexOf(payload, (byte) '\n');
+        if (newline < 0) {
+            return;
+        }
+
+        String[] header = new String(payload, 0, newline, StandardCharsets.UTF_8).split(" ");
+        if (header.length != 2 || nodeId.equals(header[0])) {
+            return;
+        }
+
+        long publishedAt = Long.parseLong(header[1]);
+        hopLatency.record(Math.max(0, System.currentTimeMillis() - publishedAt), TimeUnit.MILLISECONDS);
+        received.increment();
+
+        String topic = new String(message.getChannel(), StandardCharsets.UTF_8);
+        byte[] json = Arrays.copyOfRange(payload, newline + 1, payload.length);
+        if (topic.startsWith(USER_TOPIC_PREFIX)) {
+            Long userId = Long.parseLong(topic.substring(USER_TOPIC_PREFIX.length()));
+            OutboundFrame frame = frameEncoder.wrap(json);
+            sessionRegistry.getUserSessions(userId).forEach(outbound -> outbound.offer(frame));
+            return;
+        }
+
+        Long channelId = Long.parseLong(topic.substring(TOPIC_PREFIX.length()));
+        deliverLocally(channelId, frameEncoder.wrap(json));
+
+        if (recentMessageCache.contains(channelId)) {
+            MessageDTO relayed = frameEncoder.readMessage(json);
+            if (relayed != null) {
+                recentMessageCache.apply(relayed);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onChannelActivityChanged(Long channelId) {
+        boolean wanted = sessionRegistry.hasSubscribers(channelId);
+        Boolean changed = reconcile(listening, channelId, wanted, TOPIC_PREFIX);
+        if (changed != null) {
+            // Remote messages are no longer seen once unsubscribed, so the cached ring would go stale
+            recentMessageCache.setTracked(channelId, changed);
+        }
+    }
+
+    @Override
+    public synchronized void onUserActivityChanged(Long userId) {
+        reconcile(listeningUsers, userId, sessionRegistry.hasSessions(userId), USER_TOPIC_PREFIX);
+    }
+
+    /**
+     * Starts or stops listening on a topic to match {@code wanted}. Returns the new
+     * state if it changed, or null if nothing changed or the change failed.
+     */
+    private Boolean reconcile(Set<Long> active, Long id, boolean wanted, String prefix) {
+        boolean isActive = active.contains(id);
+        ChannelTopic topic = new ChannelTopic(prefix + id);
+
+        try {
+            if (wanted && !isActive) {
+                listenerContainer.addMessageListener(this, topic);
+                active.add(id);
+                return true;
+            } else if (!wanted && isActive) {
+                listenerContainer.removeMessageListener(this, topic);
+                active.remove(id);
+                return false;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to {} listening on {}", wanted ? "start" : "stop", topic.getTopic(), e);
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,313 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sermo.dto.BootstrapDTO;
+import com.sermo.dto.DirectMessageDTO;
+import com.sermo.dto.MessageDTO;
+import com.sermo.security.JwtPrincipal;
+import com.sermo.service.BootstrapService;
+import com.sermo.service.DirectMessageService;
+import com.sermo.service.MessageChangedEvent;
+import com.sermo.service.MessageIngestPipeline;
+import com.sermo.service.MessageService;
+import com.sermo.service.PresenceBatcher;
+import com.sermo.util.JwtUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protocol-independent handling of chat events. The JSON and binary WebSocket
+ * handlers only decode frames and delegate here.
+ */
+@Component
+public class ChatEventProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatEventProcessor.class);
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageIngestPipeline messageIngestPipeline;
+
+    @Autowired
+    private DirectMessageService directMessageService;
+
+    @Autowired
+    private PresenceBatcher presenceBatcher;
+
+    @Autowired
+    private BootstrapService bootstrapService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private FrameEncoder frameEncoder;
+
+    @Autowired
+    private ChannelBroadcaster channelBroadcaster;
+
+    @Autowired
+    private TypingTracker typingTracker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sermo.websocket.resume.max-replay:500}")
+    private int maxReplay;
+
+    private DistributionSummary replayed;
+    private Counter resyncs;
+
+    @PostConstruct
+    void init() {
+        replayed = DistributionSummary.builder("sermo.websocket.resume.replayed").register(meterRegistry);
+        resyncs = meterRegistry.counter("sermo.websocket.resume.resyncs");
+    }
+
+    public void connect(WebSocketSession session, boolean binaryProtocol) throws IOException {
+        MultiValueMap<String, String> params = queryParams(session);
+        String token = params.getFirst("token");
+        if (token != null) {
+            JwtPrincipal principal = jwtUtil.verify(token);
+            if (principal != null) {
+                boolean coalesce = Boolean.parseBoolean(params.getFirst("coalesce"));
+                sessionRegistry.register(session, principal.userId(), principal.username(), binaryProtocol, coalesce);
+                // Reconnects that RESUME already have their state and pass ready=false
+                if (!"false".equals(params.getFirst("ready"))) {
+                    sendReady(session, principal);
+                }
+            } else {
+                session.close(CloseStatus.BAD_DATA);
+            }
+        } else {
+            session.close(CloseStatus.BAD_DATA);
+        }
+    }
+
+    private void sendReady(WebSocketSession session, JwtPrincipal principal) throws IOException {
+        OutboundQueue outbound = sessionRegistry.getOutbound(session.getId());
+        if (outbound == null) {
+            return;
+        }
+        try {
+            BootstrapDTO ready = bootstrapService.getBootstrap(principal.userId(), principal.username());
+            outbound.offer(frameEncoder.encode("READY", ready));
+        } catch (RuntimeException e) {
+            // The session stays usable; tell the client to fall back to GET /api/bootstrap
+            log.error("Failed to build READY for user {} on session {}", principal.userId(), session.getId(), e);
+            outbound.offer(frameEncoder.encode("ERROR", Map.of("code", "READY_FAILED")));
+        }
+    }
+
+    public Long getUserId(WebSocketSession session) {
+        return sessionRegistry.getUserId(session.getId());
+    }
+
+    public void sendMessage(WebSocketSession session, Long userId, Long channelId,
+                            String encryptedContent, String nonce) throws IOException {
+        if (messageIngestPipeline.isEnabled()) {
+            sendWriteBehind(session, userId, channelId, encryptedContent, nonce);
+        } else {
+            // Store message (backend only sees encrypted content)
+            MessageDTO messageDTO = messageService.sendMessage(userId, channelId, encryptedContent, nonce);
+
+            // Broadcast to all sessions subscribed to this channel
+            channelBroadcaster.broadcast(channelId, frameEncoder.encode("MESSAGE", messageDTO));
+        }
+        typingTracker.stop(userId, channelId);
+    }
+
+    private void sendWriteBehind(WebSocketSession session, Long userId, Long channelId,
+                                 String encryptedContent, String nonce) throws IOException {
+        String username = sessionRegistry.getUsername(session.getId());
+        MessageIngestPipeline.PendingMessage pending;
+        try {
+            pending = messageIngestPipeline.accept(userId, username, channelId, encryptedContent, nonce);
+        } catch (RuntimeException e) {
+            log.warn("Rejected message from user {} in channel {}: {}", userId, channelId, e.getMessage());
+            rejectMessage(session, channelId, nonce);
+            return;
+        }
+
+        boolean ackAfterFlush = messageIngestPipeline.isAckAfterFlush();
+        if (!ackAfterFlush) {
+            channelBroadcaster.broadcast(channelId, frameEncoder.encode("MESSAGE", pending.message()));
+        }
+        // A failed flush is reported to the sender alone
+        pending.flushed().whenComplete((message, error) -> {
+            try {
+                if (error != null) {
+                    rejectMessage(session, channelId, nonce);
+                } else if (ackAfterFlush) {
+                    channelBroadcaster.broadcast(channelId, frameEncoder.encode("MESSAGE", message));
+                }
+            } catch (JsonProcessingException e) {
+                log.error("Failed to encode write-behind result for message {} in channel {}",
+                    pending.message().getId(), channelId, e);
+            }
+        });
+    }
+
+    private void rejectMessage(WebSocketSession session, Long channelId, String nonce) throws JsonProcessingException {
+        OutboundQueue outbound = sessionRegistry.getOutbound(session.getId());
+        if (outbound == null) {
+            return;
+        }
+        // The nonce is unique per message, so the client can match it to its pending send
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "MESSAGE_NOT_SAVED");
+        error.put("channelId", channelId);
+        error.put("nonce", nonce);
+        outbound.offer(frameEncoder.encode("ERROR", error));
+    }
+
+    private void rejectDirectMessage(WebSocketSession session, Long receiverId, String nonce) throws JsonProcessingException {
+        OutboundQueue outbound = sessionRegistry.getOutbound(session.getId());
+        if (outbound == null) {
+            return;
+        }
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "DM_NOT_SENT");
+        error.put("receiverId", receiverId);
+        error.put("nonce", nonce);
+        outbound.offer(frameEncoder.encode("ERROR", error));
+    }
+
+    /**
+     * Pushes an edit or deletion to the channel's subscribers on every node.
+     */
+    @EventListener
+    public void onMessageChanged(MessageChangedEvent event) {
+        MessageDTO message = event.message();
+        OutboundFrame frame;
+        try {
+            frame = frameEncoder.encode("MESSAGE_CHANGE", MessageService.toChange(message));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode message change", e);
+        }
+        channelBroadcaster.broadcast(message.getChannelId(), frame);
+    }
+
+    /**
+     * Persists a direct message and pushes it to every session of both participants,
+     * so the sender's other devices see it too. A message that can't be stored is
+     * reported back to the sending session only.
+     */
+    public void sendDirectMessage(WebSocketSession session, Long userId, Long receiverId,
+                                  String encryptedContent, String nonce) throws IOException {
+        DirectMessageDTO message;
+        try {
+            message = directMessageService.sendDirectMessage(userId, receiverId, encryptedContent, nonce);
+        } catch (RuntimeException e) {
+            log.warn("Rejected direct message from user {} to user {}: {}", userId, receiverId, e.getMessage());
+            rejectDirectMessage(session, receiverId, nonce);
+            return;
+        }
+        OutboundFrame frame = frameEncoder.encode("DM", message);
+
+        channelBroadcaster.sendToUser(receiverId, frame);
+        if (!receiverId.equals(userId)) {
+            channelBroadcaster.sendToUser(userId, frame);
+        }
+    }
+
+    public void typing(Long userId, Long channelId) throws IOException {
+        typingTracker.typing(userId, channelId);
+    }
+
+    public void stopTyping(Long userId, Long channelId) throws IOException {
+        typingTracker.stop(userId, channelId);
+    }
+
+    public void presence(Long userId, Long channelId, boolean online) {
+        if (online) {
+            presenceBatcher.online(userId, channelId.toString());
+        } else {
+            presenceBatcher.offline(userId);
+        }
+    }
+
+    public void subscribe(WebSocketSession session, Long channelId) {
+        sessionRegistry.subscribe(session.getId(), channelId);
+    }
+
+    public void unsubscribe(WebSocketSession session, Long channelId) {
+        sessionRegistry.unsubscribe(session.getId(), channelId);
+    }
+
+    /**
+     * Re-subscribes a reconnecting session and replays only what it missed: the
+     * messages after its last seen sequence in each channel. Once the replay budget
+     * is used up, remaining channels get a RESYNC telling the client to reload their
+     * history over HTTP instead. Sequences commit in the order they are issued (see
+     * ChannelSequencer), so nothing below a client's last seen sequence can still
+     * appear. Live messages can interleave with the replay, so clients drop any
+     * sequence they have already applied.
+     */
+    public void resume(WebSocketSession session, Map<Long, Long> lastSeen) throws IOException {
+        OutboundQueue outbound = sessionRegistry.getOutbound(session.getId());
+        if (outbound == null) {
+            return;
+        }
+
+        int budget = maxReplay;
+        int sent = 0;
+        for (Map.Entry<Long, Long> entry : lastSeen.entrySet()) {
+            Long channelId = entry.getKey();
+            // Subscribe before reading so nothing sent meanwhile falls between the two
+            sessionRegistry.subscribe(session.getId(), channelId);
+
+            List<MessageDTO> missed = messageService.getMessagesSince(channelId, entry.getValue(), budget);
+            if (missed == null) {
+                resyncs.increment();
+                outbound.offer(frameEncoder.encode("RESYNC", Map.of("channelId", channelId)));
+                continue;
+            }
+            for (MessageDTO message : missed) {
+                outbound.offer(frameEncoder.encode("MESSAGE", message));
+            }
+            budget -= missed.size();
+            sent += missed.size();
+        }
+        replayed.record(sent);
+    }
+
+    public void disconnect(WebSocketSession session) {
+        Long userId = sessionRegistry.unregister(session.getId());
+        // Other devices keep the user online; their channels expire on their own if unused
+        if (userId != null && !sessionRegistry.hasSessions(userId)) {
+            presenceBatcher.offline(userId);
+        }
+    }
+
+    private MultiValueMap<String, String> queryParams(WebSocketSession session) {
+        java.net.URI uri = session.getUri();
+        if (uri == null) {
+            return new LinkedMultiValueMap<>();
+        }
+        return UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+    }
+}
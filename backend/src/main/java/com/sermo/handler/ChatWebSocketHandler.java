@@ -1,11 +1,9 @@
 package com.sermo.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.sermo.dto.MessageDTO;
 import com.sermo.dto.WebSocketMessage;
-import com.sermo.service.MessageService;
-import com.sermo.service.PresenceService;
-import com.sermo.util.JwtUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -14,54 +12,32 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
-    @Autowired
-    private MessageService messageService;
+    private static final Logger log = LoggerFactory.getLogger(ChatWebSocketHandler.class);
 
-    @Autowired
-    private PresenceService presenceService;
-
-    @Autowired
-    private JwtUtil jwtUtil;
+    public static final String SUBPROTOCOL = "sermo.json.v1";
 
     @Autowired
     private ObjectMapper objectMapper;
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, Long> sessionUserMap = new ConcurrentHashMap<>();
+    @Autowired
+    private ChatEventProcessor chatEventProcessor;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String token = extractToken(session);
-        if (token != null) {
-            try {
-                String username = jwtUtil.extractUsername(token);
-                Long userId = jwtUtil.extractUserId(token);
-                
-                if (jwtUtil.validateToken(token, username)) {
-                    sessions.put(session.getId(), session);
-                    sessionUserMap.put(session.getId(), userId);
-                } else {
-                    session.close(CloseStatus.BAD_DATA);
-                }
-            } catch (Exception e) {
-                session.close(CloseStatus.BAD_DATA);
-            }
-        } else {
-            session.close(CloseStatus.BAD_DATA);
-        }
+        chatEventProcessor.connect(session, false);
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         try {
             WebSocketMessage wsMessage = objectMapper.readValue(message.getPayload(), WebSocketMessage.class);
-            Long userId = sessionUserMap.get(session.getId());
+            Long userId = chatEventProcessor.getUserId(session);
 
             if (userId == null) {
                 return;
@@ -71,97 +47,84 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 case "MESSAGE":
                     handleMessage(session, userId, wsMessage);
                     break;
+                case "DM":
+                    handleDirectMessage(session, userId, wsMessage);
+                    break;
                 case "TYPING":
-                    handleTyping(session, userId, wsMessage);
+                    handleTyping(userId, wsMessage);
+                    break;
+                case "TYPING_STOP":
+                    chatEventProcessor.stopTyping(userId, channelId(wsMessage));
                     break;
                 case "PRESENCE":
-                    handlePresence(session, userId, wsMessage);
+                    handlePresence(userId, wsMessage);
+                    break;
+                case "SUBSCRIBE":
+                    chatEventProcessor.subscribe(session, channelId(wsMessage));
+                    break;
+                case "UNSUBSCRIBE":
+                    chatEventProcessor.unsubscribe(session, channelId(wsMessage));
+                    break;
+                case "RESUME":
+                    handleResume(session, wsMessage);
                     break;
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Failed to handle text frame on session {}", session.getId(), e);
         }
     }
 
     @SuppressWarnings("unchecked")
     private void handleMessage(WebSocketSession session, Long userId, WebSocketMessage wsMessage) throws IOException {
         Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
-        Long channelId = Long.parseLong(payload.get("channelId").toString());
         String encryptedContent = (String) payload.get("encryptedContent");
         String nonce = (String) payload.get("nonce");
 
-        // Store message (backend only sees encrypted content)
-        MessageDTO messageDTO = messageService.sendMessage(userId, channelId, encryptedContent, nonce);
+        chatEventProcessor.sendMessage(session, userId, channelId(wsMessage), encryptedContent, nonce);
+    }
 
-        // Broadcast to all sessions subscribed to this channel
-        WebSocketMessage broadcast = new WebSocketMessage("MESSAGE", messageDTO);
-        String broadcastJson = objectMapper.writeValueAsString(broadcast);
+    @SuppressWarnings("unchecked")
+    private void handleDirectMessage(WebSocketSession session, Long userId, WebSocketMessage wsMessage) throws IOException {
+        Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
+        Long receiverId = Long.parseLong(payload.get("receiverId").toString());
+        String encryptedContent = (String) payload.get("encryptedContent");
+        String nonce = (String) payload.get("nonce");
 
-        sessions.values().forEach(s -> {
-            try {
-                s.sendMessage(new TextMessage(broadcastJson));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+        chatEventProcessor.sendDirectMessage(session, userId, receiverId, encryptedContent, nonce);
     }
 
     @SuppressWarnings("unchecked")
-    private void handleTyping(WebSocketSession session, Long userId, WebSocketMessage wsMessage) throws IOException {
+    private void handleResume(WebSocketSession session, WebSocketMessage wsMessage) throws IOException {
+        // {"channels": {"<channelId>": <last seen seq>, ...}}
         Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
-        String channelId = payload.get("channelId").toString();
-
-        presenceService.setTyping(userId, channelId);
-
-        // Broadcast typing indicator
-        WebSocketMessage broadcast = new WebSocketMessage("TYPING", Map.of(
-            "userId", userId,
-            "channelId", channelId
-        ));
-        String broadcastJson = objectMapper.writeValueAsString(broadcast);
-        final TextMessage textMessage = new TextMessage(broadcastJson);
-
-        sessions.values().forEach(s -> {
-            try {
-                s.sendMessage(textMessage);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+        Map<String, Object> channels = (Map<String, Object>) payload.get("channels");
+
+        Map<Long, Long> lastSeen = new LinkedHashMap<>();
+        channels.forEach((channelId, seq) ->
+            lastSeen.put(Long.parseLong(channelId), seq != null ? Long.parseLong(seq.toString()) : 0L));
+        chatEventProcessor.resume(session, lastSeen);
+    }
+
+    private void handleTyping(Long userId, WebSocketMessage wsMessage) throws IOException {
+        chatEventProcessor.typing(userId, channelId(wsMessage));
     }
 
     @SuppressWarnings("unchecked")
-    private void handlePresence(WebSocketSession session, Long userId, WebSocketMessage wsMessage) throws IOException {
+    private void handlePresence(Long userId, WebSocketMessage wsMessage) {
         Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
-        String channelId = payload.get("channelId").toString();
         String status = (String) payload.get("status");
 
-        if ("online".equals(status)) {
-            presenceService.setOnline(userId, channelId);
-        } else {
-            presenceService.setOffline(userId);
-        }
+        chatEventProcessor.presence(userId, channelId(wsMessage), "online".equals(status));
     }
 
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        Long userId = sessionUserMap.remove(session.getId());
-        sessions.remove(session.getId());
-        if (userId != null) {
-            presenceService.setOffline(userId);
-        }
+    @SuppressWarnings("unchecked")
+    private Long channelId(WebSocketMessage wsMessage) {
+        Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
+        return Long.parseLong(payload.get("channelId").toString());
     }
 
-    private String extractToken(WebSocketSession session) {
-        java.net.URI uri = session.getUri();
-        if (uri == null) {
-            return null;
-        }
-        String query = uri.getQuery();
-        if (query != null && query.contains("token=")) {
-            return query.substring(query.indexOf("token=") + 6);
-        }
-        return null;
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        chatEventProcessor.disconnect(session);
     }
 }
-
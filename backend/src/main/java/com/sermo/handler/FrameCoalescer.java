@@ -0,0 +1,71 @@
+package com.sermo.handler;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Merges already-encoded frames into a single batch frame without re-serializing them.
+ *
+ * <pre>
+ * JSON    {"type":"BATCH","payload":[frame1,frame2,...]}
+ * Binary  u8 BATCH | (u32 frameLen | frame)*
+ * </pre>
+ */
+final class FrameCoalescer {
+
+    private static final byte[] TEXT_PREFIX = "{\"type\":\"BATCH\",\"payload\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TEXT_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private FrameCoalescer() {
+    }
+
+    static boolean canMerge(WebSocketMessage<?> first, WebSocketMessage<?> next) {
+        return first.getClass() == next.getClass()
+            && (first instanceof TextMessage || first instanceof BinaryMessage);
+    }
+
+    static WebSocketMessage<?> merge(List<WebSocketMessage<?>> frames) {
+        if (frames.size() == 1) {
+            return frames.get(0);
+        }
+        return frames.get(0) instanceof TextMessage ? mergeText(frames) : mergeBinary(frames);
+    }
+
+    private static TextMessage mergeText(List<WebSocketMessage<?>> frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(batchSize(frames) + TEXT_PREFIX.length + TEXT_SUFFIX.length + frames.size());
+        out.writeBytes(TEXT_PREFIX);
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(((TextMessage) frames.get(i)).asBytes());
+        }
+        out.writeBytes(TEXT_SUFFIX);
+        return new TextMessage(out.toByteArray());
+    }
+
+    private static BinaryMessage mergeBinary(List<WebSocketMessage<?>> frames) {
+        ByteBuffer out = ByteBuffer.allocate(1 + batchSize(frames) + 4 * frames.size());
+        out.put(BinaryFrameCodec.BATCH);
+        for (WebSocketMessage<?> frame : frames) {
+            ByteBuffer payload = ((BinaryMessage) frame).getPayload().duplicate();
+            out.putInt(payload.remaining());
+            out.put(payload);
+        }
+        return new BinaryMessage(out.array());
+    }
+
+    private static int batchSize(List<WebSocketMessage<?>> frames) {
+        int size = 0;
+        for (WebSocketMessage<?> frame : frames) {
+            size += frame.getPayloadLength();
+        }
+        return size;
+    }
+}
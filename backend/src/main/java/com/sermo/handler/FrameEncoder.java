@@ -0,0 +1,93 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sermo.dto.MessageChangeDTO;
+import com.sermo.dto.MessageDTO;
+import com.sermo.dto.WebSocketMessage;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Encodes outbound envelopes straight to UTF-8 bytes. The resulting frame is
+ * immutable and is shared by every recipient of a broadcast, so the payload is
+ * serialized and encoded exactly once regardless of audience size.
+ */
+@Component
+public class FrameEncoder {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter envelopeWriter;
+
+    @PostConstruct
+    void init() {
+        envelopeWriter = objectMapper.writerFor(WebSocketMessage.class);
+    }
+
+    public OutboundFrame encode(String type, Object payload) throws JsonProcessingException {
+        TextMessage text = new TextMessage(envelopeWriter.writeValueAsBytes(new WebSocketMessage(type, payload)));
+        return new OutboundFrame(text, () -> toBinary(type, payload));
+    }
+
+    /**
+     * Wraps an envelope that was already encoded elsewhere, e.g. relayed from another node.
+     */
+    public OutboundFrame wrap(byte[] json) {
+        return new OutboundFrame(new TextMessage(json), () -> {
+            try {
+                WebSocketMessage envelope = objectMapper.readValue(json, WebSocketMessage.class);
+                return toBinary(envelope.getType(), envelope.getPayload());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * The message carried by an encoded MESSAGE or MESSAGE_CHANGE envelope, or null
+     * for other event types.
+     */
+    public MessageDTO readMessage(byte[] json) {
+        try {
+            WebSocketMessage envelope = objectMapper.readValue(json, WebSocketMessage.class);
+            if ("MESSAGE_CHANGE".equals(envelope.getType())) {
+                return objectMapper.convertValue(envelope.getPayload(), MessageChangeDTO.class).getMessage();
+            }
+            if (!"MESSAGE".equals(envelope.getType())) {
+                return null;
+            }
+            return objectMapper.convertValue(envelope.getPayload(), MessageDTO.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] toBinary(String type, Object payload) {
+        switch (type) {
+            case "MESSAGE":
+                MessageDTO message = payload instanceof MessageDTO
+                    ? (MessageDTO) payload
+                    : objectMapper.convertValue(payload, MessageDTO.class);
+                return BinaryFrameCodec.encodeMessage(message);
+            case "TYPING":
+            case "TYPING_STOP":
+                Map<?, ?> typing = (Map<?, ?>) payload;
+                return BinaryFrameCodec.encodeTyping(
+                    "TYPING".equals(type) ? BinaryFrameCodec.TYPING : BinaryFrameCodec.TYPING_STOP,
+                    Long.parseLong(typing.get("channelId").toString()),
+                    Long.parseLong(typing.get("userId").toString())
+                );
+            default:
+                return null;
+        }
+    }
+}
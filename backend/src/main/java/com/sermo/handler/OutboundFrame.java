@@ -0,0 +1,56 @@
+package com.sermo.handler;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.function.Supplier;
+
+/**
+ * An encoded broadcast event shared by all recipients. The JSON text frame is
+ * always present; the binary encoding is derived at most once, and only if a
+ * binary-protocol session actually receives the event.
+ */
+public final class OutboundFrame {
+
+    private final TextMessage text;
+    private final Supplier<byte[]> binaryEncoder;
+
+    private volatile boolean binaryResolved;
+    private volatile byte[] binary;
+
+    public OutboundFrame(TextMessage text, Supplier<byte[]> binaryEncoder) {
+        this.text = text;
+        this.binaryEncoder = binaryEncoder;
+    }
+
+    public TextMessage getText() {
+        return text;
+    }
+
+    public WebSocketMessage<?> forSession(boolean binaryProtocol) {
+        if (!binaryProtocol) {
+            return text;
+        }
+        byte[] bytes = resolveBinary();
+        // A fresh wrapper per recipient: sending consumes the ByteBuffer position
+        return bytes != null ? new BinaryMessage(bytes) : text;
+    }
+
+    private byte[] resolveBinary() {
+        if (!binaryResolved) {
+            synchronized (this) {
+                if (!binaryResolved) {
+                    try {
+                        binary = binaryEncoder.get();
+                    } catch (RuntimeException e) {
+                        // Fall back to the text frame
+                        binary = null;
+                    }
+                    binaryResolved = true;
+                }
+            }
+        }
+        return binary;
+    }
+}
@@ -0,0 +1,272 @@
+package com.sermo.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, lock-free outbound buffer for a single WebSocket session.
+ * Producers only enqueue; at most one writer task drains the queue at a time,
+ * so sends to the underlying session are always serialized.
+ *
+ * Sessions that opted into coalescing switch to batching once their outbound
+ * rate crosses the configured threshold: the writer then waits one window before
+ * draining and merges whatever is pending into a single batch frame. Below the
+ * threshold frames are sent immediately.
+ */
+public class OutboundQueue {
+
+    private final WebSocketSession session;
+    private final boolean binaryProtocol;
+    private final ScheduledExecutorService writer;
+    private final Executor closer;
+    private final Limits limits;
+    private final Metrics metrics;
+    private final Coalescing coalescing;
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // Wall-clock start of the in-flight send, 0 while idle
+    private volatile long sendStartedAt;
+
+    // Outbound rate over a fixed one-second window, only tracked when coalescing
+    private final AtomicLong rateWindowStart = new AtomicLong();
+    private final AtomicInteger rateCount = new AtomicInteger();
+    private volatile boolean batching;
+    private volatile long batchScheduledAt;
+
+    public OutboundQueue(WebSocketSession session, boolean binaryProtocol, ScheduledExecutorService writer,
+                         Executor closer, Limits limits, Metrics metrics, Coalescing coalescing) {
+        this.session = session;
+        this.binaryProtocol = binaryProtocol;
+        this.writer = writer;
+        this.closer = closer;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.coalescing = coalescing;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Queues a shared broadcast frame in the encoding this session negotiated.
+     */
+    public boolean offer(OutboundFrame frame) {
+        return offer(frame.forSession(binaryProtocol));
+    }
+
+    /**
+     * Queues a message for delivery. Returns false if the message was dropped,
+     * either because the session is gone or because it was evicted as a slow consumer.
+     */
+    public boolean offer(WebSocketMessage<?> message) {
+        if (closed.get()) {
+            metrics.dropped.increment();
+            return false;
+        }
+
+        int size = message.getPayloadLength();
+        if (isSlow(size)) {
+            metrics.dropped.increment();
+            evict();
+            return false;
+        }
+
+        queue.offer(message);
+        depth.incrementAndGet();
+        bufferedBytes.addAndGet(size);
+        metrics.queued.incrementAndGet();
+        if (closed.get()) {
+            // Lost a race with close(); nobody will drain this entry
+            discardPending();
+            return false;
+        }
+        if (coalescing != null) {
+            trackRate();
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Discards pending messages without closing the session. Called once the
+     * session has already been closed by the container.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            discardPending();
+        }
+    }
+
+    /**
+     * Evicts the session if its in-flight send has been blocked for longer than the
+     * send time limit. Called periodically, so a stalled session is dropped even if
+     * nothing else is ever sent to it.
+     */
+    public void checkSendTime() {
+        if (isSendStalled()) {
+            evict();
+        }
+    }
+
+    private boolean isSlow(int size) {
+        if (depth.get() >= limits.maxQueuedMessages()) {
+            return true;
+        }
+        if (bufferedBytes.get() + size > limits.bufferSizeLimit()) {
+            return true;
+        }
+        return isSendStalled();
+    }
+
+    private boolean isSendStalled() {
+        long startedAt = sendStartedAt;
+        return startedAt != 0 && System.currentTimeMillis() - startedAt > limits.sendTimeLimit();
+    }
+
+    private void trackRate() {
+        long now = System.currentTimeMillis();
+        long windowStart = rateWindowStart.get();
+        if (now - windowStart >= 1000 && rateWindowStart.compareAndSet(windowStart, now)) {
+            // Stay in batching mode only if the last full second was still busy
+            batching = rateCount.getAndSet(0) >= coalescing.rateThreshold();
+        }
+        if (rateCount.incrementAndGet() >= coalescing.rateThreshold()) {
+            batching = true;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            if (coalescing != null && batching) {
+                batchScheduledAt = System.nanoTime();
+                writer.schedule(this::drain, coalescing.windowMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                batchScheduledAt = 0;
+                writer.execute(this::drain);
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            WebSocketMessage<?> message;
+            while (!closed.get() && (message = queue.poll()) != null) {
+                release(message);
+                if (coalescing != null) {
+                    message = coalesce(message);
+                }
+                sendStartedAt = System.currentTimeMillis();
+                try {
+                    session.sendMessage(message);
+                } catch (IOException | IllegalStateException e) {
+                    close();
+                } finally {
+                    sendStartedAt = 0;
+                }
+            }
+            draining.set(false);
+            // A producer may have enqueued after the last poll but before the flag was cleared
+        } while (!closed.get() && !queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private WebSocketMessage<?> coalesce(WebSocketMessage<?> first) {
+        List<WebSocketMessage<?>> batch = new ArrayList<>();
+        batch.add(first);
+        int batchBytes = first.getPayloadLength();
+
+        // Single consumer: apart from close(), the head we peek is the one we poll
+        WebSocketMessage<?> next;
+        while ((next = queue.peek()) != null
+                && FrameCoalescer.canMerge(first, next)
+                && batchBytes + next.getPayloadLength() <= coalescing.maxBatchBytes()) {
+            WebSocketMessage<?> polled = queue.poll();
+            if (polled == null) {
+                // Drained concurrently by close()
+                break;
+            }
+            release(polled);
+            batch.add(polled);
+            batchBytes += polled.getPayloadLength();
+        }
+
+        if (batch.size() > 1) {
+            coalescing.batchSize().record(batch.size());
+            long scheduledAt = batchScheduledAt;
+            if (scheduledAt != 0) {
+                coalescing.addedLatency().record(System.nanoTime() - scheduledAt, TimeUnit.NANOSECONDS);
+            }
+        }
+        return FrameCoalescer.merge(batch);
+    }
+
+    private void evict() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        metrics.evicted.increment();
+        discardPending();
+        // Closing may block on the same stalled socket, so keep it off the producer and writer
+        // threads; closing also aborts the stalled send and frees its writer thread
+        closer.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                // Session is already unusable
+            }
+        });
+    }
+
+    private void discardPending() {
+        WebSocketMessage<?> message;
+        while ((message = queue.poll()) != null) {
+            release(message);
+            metrics.dropped.increment();
+        }
+    }
+
+    private void release(WebSocketMessage<?> message) {
+        depth.decrementAndGet();
+        bufferedBytes.addAndGet(-message.getPayloadLength());
+        metrics.queued.decrementAndGet();
+    }
+
+    public record Limits(int maxQueuedMessages, long bufferSizeLimit, long sendTimeLimit) {
+    }
+
+    public record Metrics(AtomicLong queued, Counter dropped, Counter evicted) {
+    }
+
+    public record Coalescing(long windowMillis, int rateThreshold, int maxBatchBytes,
+                             DistributionSummary batchSize, Timer addedLatency) {
+    }
+}
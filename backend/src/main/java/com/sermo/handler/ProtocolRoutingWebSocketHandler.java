@@ -0,0 +1,63 @@
+package com.sermo.handler;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+/**
+ * Entry point for /ws/chat. Advertises both subprotocols during the handshake and
+ * routes each session to the JSON or binary handler based on what was negotiated.
+ * Clients that request no subprotocol get the JSON handler.
+ */
+@Component
+public class ProtocolRoutingWebSocketHandler implements WebSocketHandler, SubProtocolCapable {
+
+    @Autowired
+    private ChatWebSocketHandler chatWebSocketHandler;
+
+    @Autowired
+    private BinaryChatWebSocketHandler binaryChatWebSocketHandler;
+
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryChatWebSocketHandler.SUBPROTOCOL, ChatWebSocketHandler.SUBPROTOCOL);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        route(session).afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        route(session).handleMessage(session, message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        route(session).handleTransportError(session, exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        route(session).afterConnectionClosed(session, closeStatus);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+
+    private WebSocketHandler route(WebSocketSession session) {
+        if (BinaryChatWebSocketHandler.SUBPROTOCOL.equals(session.getAcceptedProtocol())) {
+            return binaryChatWebSocketHandler;
+        }
+        return chatWebSocketHandler;
+    }
+}
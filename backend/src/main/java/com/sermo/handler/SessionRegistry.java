@@ -0,0 +1,283 @@
+package com.sermo.handler;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class SessionRegistry {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sermo.websocket.outbound.writer-threads:8}")
+    private int writerThreads;
+
+    @Value("${sermo.websocket.outbound.max-queued-messages:1000}")
+    private int maxQueuedMessages;
+
+    @Value("${sermo.websocket.outbound.buffer-size-limit:524288}")
+    private long bufferSizeLimit;
+
+    @Value("${sermo.websocket.outbound.send-time-limit:10000}")
+    private long sendTimeLimit;
+
+    @Value("${sermo.websocket.coalescing.window:20}")
+    private long coalescingWindow;
+
+    @Value("${sermo.websocket.coalescing.rate-threshold:50}")
+    private int coalescingRateThreshold;
+
+    @Value("${sermo.websocket.coalescing.max-batch-bytes:65536}")
+    private int coalescingMaxBatchBytes;
+
+    private final Map<String, OutboundQueue> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Long> sessionUserMap = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionUsernameMap = new ConcurrentHashMap<>();
+
+    // userId -> session ids, one per connected device
+    private final Map<Long, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    // channelId -> subscribed session ids, and the reverse index used for cleanup
+    private final Map<Long, Set<String>> channelSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> sessionChannels = new ConcurrentHashMap<>();
+
+    private volatile ChannelListener channelListener;
+    private volatile UserListener userListener;
+
+    private ScheduledExecutorService writer;
+    private ExecutorService closer;
+    private OutboundQueue.Limits limits;
+    private OutboundQueue.Metrics metrics;
+    private OutboundQueue.Coalescing coalescing;
+
+    @PostConstruct
+    void init() {
+        writer = Executors.newScheduledThreadPool(writerThreads, new CustomizableThreadFactory("ws-writer-"));
+        // Unbounded: a close blocked on a dead socket must not hold up the next eviction
+        closer = Executors.newCachedThreadPool(new CustomizableThreadFactory("ws-closer-"));
+        limits = new OutboundQueue.Limits(maxQueuedMessages, bufferSizeLimit, sendTimeLimit);
+
+        AtomicLong queued = new AtomicLong();
+        metrics = new OutboundQueue.Metrics(
+            queued,
+            meterRegistry.counter("sermo.ws.outbound.dropped"),
+            meterRegistry.counter("sermo.ws.outbound.evicted")
+        );
+        Gauge.builder("sermo.ws.outbound.queued", queued, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("sermo.ws.sessions", sessions, Map::size).register(meterRegistry);
+
+        coalescing = new OutboundQueue.Coalescing(
+            coalescingWindow,
+            coalescingRateThreshold,
+            coalescingMaxBatchBytes,
+            DistributionSummary.builder("sermo.ws.coalesce.batch.size").register(meterRegistry),
+            Timer.builder("sermo.ws.coalesce.added.latency").publishPercentiles(0.5, 0.99).register(meterRegistry)
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writer.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    /**
+     * Evicts sessions whose current send has exceeded the send time limit.
+     */
+    @Scheduled(fixedDelayString = "${sermo.websocket.outbound.send-check-interval:1000}")
+    void checkSendTimes() {
+        sessions.values().forEach(OutboundQueue::checkSendTime);
+    }
+
+    public void setChannelListener(ChannelListener channelListener) {
+        this.channelListener = channelListener;
+    }
+
+    public void setUserListener(UserListener userListener) {
+        this.userListener = userListener;
+    }
+
+    public void register(WebSocketSession session, Long userId, String username,
+                         boolean binaryProtocol, boolean coalesce) {
+        OutboundQueue outbound = new OutboundQueue(
+            session, binaryProtocol, writer, closer, limits, metrics, coalesce ? coalescing : null);
+        sessions.put(session.getId(), outbound);
+        sessionUserMap.put(session.getId(), userId);
+        sessionUsernameMap.put(session.getId(), username);
+
+        boolean[] first = new boolean[1];
+        userSessions.compute(userId, (id, sessionIds) -> {
+            first[0] = sessionIds == null;
+            Set<String> result = sessionIds != null ? sessionIds : ConcurrentHashMap.newKeySet();
+            result.add(session.getId());
+            return result;
+        });
+        if (first[0]) {
+            notifyUserListener(userId);
+        }
+    }
+
+    public Long unregister(String sessionId) {
+        Set<Long> channels = sessionChannels.remove(sessionId);
+        if (channels != null) {
+            channels.forEach(channelId -> removeSubscriber(channelId, sessionId));
+        }
+        OutboundQueue outbound = sessions.remove(sessionId);
+        if (outbound != null) {
+            outbound.close();
+        }
+        sessionUsernameMap.remove(sessionId);
+        Long userId = sessionUserMap.remove(sessionId);
+        if (userId != null) {
+            removeUserSession(userId, sessionId);
+        }
+        return userId;
+    }
+
+    public Long getUserId(String sessionId) {
+        return sessionUserMap.get(sessionId);
+    }
+
+    public String getUsername(String sessionId) {
+        return sessionUsernameMap.get(sessionId);
+    }
+
+    public OutboundQueue getOutbound(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public boolean hasSessions(Long userId) {
+        return userSessions.containsKey(userId);
+    }
+
+    /**
+     * Outbound queues of every local session the user has open.
+     */
+    public Collection<OutboundQueue> getUserSessions(Long userId) {
+        return outboundsOf(userSessions.get(userId));
+    }
+
+    public void subscribe(String sessionId, Long channelId) {
+        if (!sessions.containsKey(sessionId)) {
+            return;
+        }
+        sessionChannels.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(channelId);
+        boolean[] first = new boolean[1];
+        channelSubscribers.compute(channelId, (id, subscribers) -> {
+            first[0] = subscribers == null;
+            Set<String> result = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            result.add(sessionId);
+            return result;
+        });
+        if (first[0]) {
+            notifyChannelListener(channelId);
+        }
+    }
+
+    public void unsubscribe(String sessionId, Long channelId) {
+        Set<Long> channels = sessionChannels.get(sessionId);
+        if (channels != null) {
+            channels.remove(channelId);
+        }
+        removeSubscriber(channelId, sessionId);
+    }
+
+    public boolean hasSubscribers(Long channelId) {
+        return channelSubscribers.containsKey(channelId);
+    }
+
+    public Collection<OutboundQueue> getSubscribers(Long channelId) {
+        return outboundsOf(channelSubscribers.get(channelId));
+    }
+
+    private Collection<OutboundQueue> outboundsOf(Set<String> sessionIds) {
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return List.of();
+        }
+        List<OutboundQueue> result = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            OutboundQueue outbound = sessions.get(sessionId);
+            if (outbound != null) {
+                result.add(outbound);
+            }
+        }
+        return result;
+    }
+
+    private void removeSubscriber(Long channelId, String sessionId) {
+        // Drop the channel entry atomically once its last subscriber leaves
+        boolean[] last = new boolean[1];
+        channelSubscribers.computeIfPresent(channelId, (id, subscribers) -> {
+            subscribers.remove(sessionId);
+            last[0] = subscribers.isEmpty();
+            return last[0] ? null : subscribers;
+        });
+        if (last[0]) {
+            notifyChannelListener(channelId);
+        }
+    }
+
+    private void removeUserSession(Long userId, String sessionId) {
+        boolean[] last = new boolean[1];
+        userSessions.computeIfPresent(userId, (id, sessionIds) -> {
+            sessionIds.remove(sessionId);
+            last[0] = sessionIds.isEmpty();
+            return last[0] ? null : sessionIds;
+        });
+        if (last[0]) {
+            notifyUserListener(userId);
+        }
+    }
+
+    private void notifyUserListener(Long userId) {
+        UserListener listener = userListener;
+        if (listener != null) {
+            listener.onUserActivityChanged(userId);
+        }
+    }
+
+    private void notifyChannelListener(Long channelId) {
+        ChannelListener listener = channelListener;
+        if (listener != null) {
+            listener.onChannelActivityChanged(channelId);
+        }
+    }
+
+    /**
+     * Notified when a channel gains its first local subscriber or loses its last one.
+     * Implementations should re-read {@link #hasSubscribers} rather than trust the
+     * order of notifications, since concurrent transitions may be reported out of order.
+     */
+    public interface ChannelListener {
+        void onChannelActivityChanged(Long channelId);
+    }
+
+    /**
+     * Notified when a user opens their first local session or closes their last one,
+     * with the same ordering caveat as {@link ChannelListener}.
+     */
+    public interface UserListener {
+        void onUserActivityChanged(Long userId);
+    }
+}
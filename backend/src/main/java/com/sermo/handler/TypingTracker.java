@@ -0,0 +1,125 @@
+package com.sermo.handler;
+
+import com.sermo.service.PresenceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local typing state. Keystroke frames only refresh an in-memory deadline;
+ * subscribers see an explicit TYPING event when a user starts typing (repeated at
+ * most once per broadcast interval while they keep going) and a TYPING_STOP event
+ * when they send, stop explicitly, or the deadline passes. Redis is written on the
+ * same schedule as the broadcasts instead of on every keystroke.
+ */
+@Component
+public class TypingTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(TypingTracker.class);
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private FrameEncoder frameEncoder;
+
+    @Autowired
+    private ChannelBroadcaster channelBroadcaster;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sermo.typing.ttl:5000}")
+    private long ttl;
+
+    @Value("${sermo.typing.broadcast-interval:3000}")
+    private long broadcastInterval;
+
+    private final Map<TypingKey, TypingState> active = new ConcurrentHashMap<>();
+
+    private Counter received;
+    private Counter broadcasts;
+    private Counter suppressed;
+
+    @PostConstruct
+    void init() {
+        received = meterRegistry.counter("sermo.typing.received");
+        broadcasts = meterRegistry.counter("sermo.typing.broadcasts");
+        suppressed = meterRegistry.counter("sermo.typing.suppressed");
+    }
+
+    public void typing(Long userId, Long channelId) throws IOException {
+        received.increment();
+        long now = System.currentTimeMillis();
+        boolean[] announce = new boolean[1];
+
+        active.compute(new TypingKey(userId, channelId), (key, state) -> {
+            if (state == null) {
+                state = new TypingState();
+            }
+            state.expiresAt = now + ttl;
+            if (now - state.lastBroadcastAt >= broadcastInterval) {
+                state.lastBroadcastAt = now;
+                announce[0] = true;
+            }
+            return state;
+        });
+
+        if (announce[0]) {
+            presenceService.setTyping(userId, channelId.toString());
+            broadcast("TYPING", userId, channelId);
+        } else {
+            suppressed.increment();
+        }
+    }
+
+    public void stop(Long userId, Long channelId) throws IOException {
+        if (active.remove(new TypingKey(userId, channelId)) != null) {
+            presenceService.clearTyping(userId, channelId.toString());
+            broadcast("TYPING_STOP", userId, channelId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sermo.typing.sweep-interval:500}")
+    void expire() {
+        long now = System.currentTimeMillis();
+        active.forEach((key, state) -> {
+            if (state.expiresAt <= now && active.remove(key, state)) {
+                try {
+                    // The Redis key carries its own TTL, so only subscribers need telling
+                    broadcast("TYPING_STOP", key.userId(), key.channelId());
+                } catch (IOException e) {
+                    log.warn("Failed to broadcast TYPING_STOP for user {} in channel {}",
+                        key.userId(), key.channelId(), e);
+                }
+            }
+        });
+    }
+
+    private void broadcast(String type, Long userId, Long channelId) throws IOException {
+        OutboundFrame frame = frameEncoder.encode(type, Map.of(
+            "userId", userId,
+            "channelId", channelId.toString()
+        ));
+        channelBroadcaster.broadcast(channelId, frame);
+        broadcasts.increment();
+    }
+
+    private record TypingKey(Long userId, Long channelId) {
+    }
+
+    private static final class TypingState {
+        volatile long expiresAt;
+        volatile long lastBroadcastAt;
+    }
+}
@@ -1,6 +1,8 @@
 package com.sermo.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +11,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "channels")
 @Data
 @NoArgsConstructor
@@ -34,6 +37,10 @@ public class Channel {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Owned by ChannelSequencer, which updates it directly; never written through the entity
+    @Column(name = "last_seq", insertable = false, updatable = false)
+    private Long lastSeq;
+
     @OneToMany(mappedBy = "channel", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Message> messages = new HashSet<>();
 
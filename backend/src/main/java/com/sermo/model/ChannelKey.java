@@ -8,6 +8,8 @@ import lombok.NoArgsConstructor;
 @Entity
 @Table(name = "channel_keys", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"channel_id", "user_id"})
+}, indexes = {
+    @Index(name = "idx_channel_keys_user", columnList = "user_id")
 })
 @Data
 @NoArgsConstructor
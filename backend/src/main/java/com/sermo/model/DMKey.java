@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+// user1 is always the lower user id, so one pair has exactly one row in either direction
 @Table(name = "dm_keys", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"user1_id", "user2_id"})
 })
@@ -30,5 +31,18 @@ public class DMKey {
 
     @Column(name = "encrypted_key_user2", columnDefinition = "TEXT", nullable = false)
     private String encryptedKeyUser2; // DM key encrypted with user2's public key
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        if (user1.getId() > user2.getId()) {
+            User user = user1;
+            user1 = user2;
+            user2 = user;
+            String encryptedKey = encryptedKeyUser1;
+            encryptedKeyUser1 = encryptedKeyUser2;
+            encryptedKeyUser2 = encryptedKey;
+        }
+    }
 }
 
@@ -1,5 +1,6 @@
 package com.sermo.model;
 
+import com.sermo.util.ConversationKey;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -7,13 +8,15 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "direct_messages")
+@Table(name = "direct_messages", indexes = {
+    @Index(name = "idx_dm_conversation_created_id", columnList = "conversation_key, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class DirectMessage {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @ManyToOne
@@ -24,6 +27,10 @@ public class DirectMessage {
     @JoinColumn(name = "receiver_id", nullable = false)
     private User receiver;
 
+    // "{lowerUserId}:{higherUserId}", so both directions share one index range
+    @Column(name = "conversation_key", length = 41)
+    private String conversationKey;
+
     @Column(name = "encrypted_content", columnDefinition = "TEXT", nullable = false)
     private String encryptedContent; // Base64 encoded encrypted payload
 
@@ -39,6 +46,7 @@ public class DirectMessage {
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
+        conversationKey = ConversationKey.of(sender.getId(), receiver.getId());
     }
 }
 
@@ -7,13 +7,17 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_channel_created_id", columnList = "channel_id, created_at, id"),
+    @Index(name = "idx_messages_channel_seq", columnList = "channel_id, seq"),
+    @Index(name = "idx_messages_channel_version", columnList = "channel_id, version")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @ManyToOne
@@ -30,12 +34,21 @@ public class Message {
     @Column(name = "nonce", nullable = false)
     private String nonce; // Base64 encoded nonce for AES-GCM
 
+    @Column(name = "seq")
+    private Long seq; // Per-channel sequence, see ChannelSequencer; null on rows older than the column
+
+    @Column(name = "version")
+    private Long version; // Sequence of the latest create/edit/delete, drawn from the same counter as seq
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
     @Column(name = "edited_at")
     private LocalDateTime editedAt;
 
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt; // Set on tombstones, whose content is cleared
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
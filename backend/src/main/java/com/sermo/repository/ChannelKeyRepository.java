@@ -1,7 +1,10 @@
 package com.sermo.repository;
 
+import com.sermo.dto.ChannelKeyDTO;
 import com.sermo.model.ChannelKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
@@ -11,5 +14,10 @@ public interface ChannelKeyRepository extends JpaRepository<ChannelKey, Long> {
     Optional<ChannelKey> findByChannelIdAndUserId(Long channelId, Long userId);
     List<ChannelKey> findByChannelId(Long channelId);
     List<ChannelKey> findByUserId(Long userId);
+
+    // Key bootstrap reads straight into DTOs instead of loading each Channel and User
+    @Query("SELECT new com.sermo.dto.ChannelKeyDTO(k.channel.id, k.user.id, k.encryptedKey) " +
+           "FROM ChannelKey k WHERE k.user.id = :userId")
+    List<ChannelKeyDTO> findKeyDTOsByUserId(@Param("userId") Long userId);
 }
 
@@ -1,12 +1,33 @@
 package com.sermo.repository;
 
+import com.sermo.dto.ChannelDTO;
 import com.sermo.model.Channel;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ChannelRepository extends JpaRepository<Channel, Long> {
     List<Channel> findByServerId(Long serverId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.sermo.dto.ChannelDTO(c.id, c.name, c.description, c.server.id, c.isPrivate, c.createdAt) " +
+           "FROM Channel c WHERE c.server.id = :serverId")
+    List<ChannelDTO> findChannelDTOsByServerId(@Param("serverId") Long serverId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.sermo.dto.ChannelDTO(c.id, c.name, c.description, c.server.id, c.isPrivate, c.createdAt) " +
+           "FROM Channel c WHERE c.server.id IN :serverIds")
+    List<ChannelDTO> findChannelDTOsByServerIds(@Param("serverIds") Collection<Long> serverIds);
+
+    // Rows of (channelId, serverId)
+    @Query("SELECT c.id, c.server.id FROM Channel c WHERE c.id IN :ids")
+    List<Object[]> findServerIds(@Param("ids") Collection<Long> ids);
 }
 
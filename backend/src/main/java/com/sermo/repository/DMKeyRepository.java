@@ -7,8 +7,6 @@ import java.util.Optional;
 
 @Repository
 public interface DMKeyRepository extends JpaRepository<DMKey, Long> {
-    Optional<DMKey> findByUser1IdAndUser2IdOrUser1IdAndUser2Id(
-        Long user1Id1, Long user2Id1, Long user1Id2, Long user2Id2
-    );
+    // Rows are stored (lower, higher), so pass the ids in that order to hit the unique index
+    Optional<DMKey> findByUser1IdAndUser2Id(Long user1Id, Long user2Id);
 }
-
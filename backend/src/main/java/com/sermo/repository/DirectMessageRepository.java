@@ -1,14 +1,38 @@
 package com.sermo.repository;
 
+import com.sermo.dto.DirectMessageDTO;
 import com.sermo.model.DirectMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface DirectMessageRepository extends JpaRepository<DirectMessage, Long> {
-    List<DirectMessage> findBySenderIdAndReceiverIdOrSenderIdAndReceiverIdOrderByCreatedAtAsc(
-        Long senderId1, Long receiverId1, Long senderId2, Long receiverId2
-    );
-}
 
+    // Keyset pages over the (conversation_key, created_at, id) index; one range
+    // scan covers both directions of the conversation
+    String SELECT_DTO = "SELECT new com.sermo.dto.DirectMessageDTO(d.id, s.id, s.username, d.receiver.id, " +
+                        "d.encryptedContent, d.nonce, d.createdAt, d.editedAt) " +
+                        "FROM DirectMessage d JOIN d.sender s WHERE d.conversationKey = :conversationKey ";
+
+    @Query(SELECT_DTO + "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DirectMessageDTO> findLatest(@Param("conversationKey") String conversationKey, Pageable pageable);
+
+    @Query(SELECT_DTO + "AND d.createdAt <= :createdAt AND (d.createdAt < :createdAt OR d.id < :id) " +
+           "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DirectMessageDTO> findBefore(@Param("conversationKey") String conversationKey,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") Long id,
+                                      Pageable pageable);
+
+    @Query(SELECT_DTO + "AND d.createdAt >= :createdAt AND (d.createdAt > :createdAt OR d.id > :id) " +
+           "ORDER BY d.createdAt ASC, d.id ASC")
+    List<DirectMessageDTO> findAfter(@Param("conversationKey") String conversationKey,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+}
@@ -1,13 +1,60 @@
 package com.sermo.repository;
 
+import com.sermo.dto.MessageDTO;
 import com.sermo.model.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findByChannelIdOrderByCreatedAtAsc(Long channelId);
     List<Message> findByChannelIdOrderByCreatedAtDesc(Long channelId);
+
+    // Read paths select straight into MessageDTO, so no User/Channel/Server
+    // entities are loaded per row
+    String DTO_PROJECTION = "SELECT new com.sermo.dto.MessageDTO(m.id, s.id, s.username, m.channel.id, " +
+                            "m.encryptedContent, m.nonce, m.createdAt, m.editedAt, m.seq, m.version, m.deletedAt) " +
+                            "FROM Message m JOIN m.sender s WHERE m.channel.id = :channelId ";
+
+    // History never shows tombstones; only the change feed does
+    String SELECT_DTO = DTO_PROJECTION + "AND m.deletedAt IS NULL ";
+
+    @Query(SELECT_DTO + "ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageDTO> findDTOsByChannelId(@Param("channelId") Long channelId);
+
+    // Keyset pages over the (channel_id, created_at, id) index. The redundant
+    // range bound on created_at gives the planner an index range to scan.
+
+    @Query(SELECT_DTO + "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MessageDTO> findLatest(@Param("channelId") Long channelId, Pageable pageable);
+
+    @Query(SELECT_DTO + "AND m.createdAt <= :createdAt AND (m.createdAt < :createdAt OR m.id < :id) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MessageDTO> findBefore(@Param("channelId") Long channelId,
+                             @Param("createdAt") LocalDateTime createdAt,
+                             @Param("id") Long id,
+                             Pageable pageable);
+
+    @Query(SELECT_DTO + "AND m.createdAt >= :createdAt AND (m.createdAt > :createdAt OR m.id > :id) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageDTO> findAfter(@Param("channelId") Long channelId,
+                            @Param("createdAt") LocalDateTime createdAt,
+                            @Param("id") Long id,
+                            Pageable pageable);
+
+    @Query(SELECT_DTO + "AND m.seq > :seq ORDER BY m.seq ASC")
+    List<MessageDTO> findSinceSeq(@Param("channelId") Long channelId,
+                                  @Param("seq") Long seq,
+                                  Pageable pageable);
+
+    @Query(DTO_PROJECTION + "AND m.version > :version ORDER BY m.version ASC")
+    List<MessageDTO> findChangesSince(@Param("channelId") Long channelId,
+                                      @Param("version") Long version,
+                                      Pageable pageable);
 }
 
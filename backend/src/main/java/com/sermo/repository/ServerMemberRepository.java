@@ -2,7 +2,10 @@ package com.sermo.repository;
 
 import com.sermo.model.ServerMember;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,5 +15,8 @@ public interface ServerMemberRepository extends JpaRepository<ServerMember, Long
     List<ServerMember> findByUserId(Long userId);
     List<ServerMember> findByServerId(Long serverId);
     boolean existsByServerIdAndUserId(Long serverId, Long userId);
+
+    @Query("SELECT sm.user.id FROM ServerMember sm WHERE sm.server.id = :serverId AND sm.user.id IN :userIds")
+    List<Long> findMemberIds(@Param("serverId") Long serverId, @Param("userIds") Collection<Long> userIds);
 }
 
@@ -1,7 +1,13 @@
 package com.sermo.repository;
 
+import com.sermo.dto.ServerDTO;
 import com.sermo.model.Server;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
@@ -9,5 +15,17 @@ import java.util.List;
 public interface ServerRepository extends JpaRepository<Server, Long> {
     List<Server> findByIsPublicTrue();
     List<Server> findByOwnerId(Long ownerId);
+
+    // Server and channel listings change rarely and are served from the query cache;
+    // Hibernate drops the cached results whenever one of the queried tables is written
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.sermo.dto.ServerDTO(s.id, s.name, s.description, s.isPublic, s.owner.id, s.createdAt) " +
+           "FROM Server s WHERE s.isPublic = true")
+    List<ServerDTO> findPublicServerDTOs();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.sermo.dto.ServerDTO(s.id, s.name, s.description, s.isPublic, s.owner.id, s.createdAt) " +
+           "FROM ServerMember sm JOIN sm.server s WHERE sm.user.id = :userId")
+    List<ServerDTO> findServerDTOsByMemberId(@Param("userId") Long userId);
 }
 
@@ -0,0 +1,15 @@
+package com.sermo.security;
+
+import java.security.Principal;
+
+/**
+ * Authenticated user as described by a verified JWT. Everything needed to
+ * identify the caller comes from the token claims, so no user lookup is needed.
+ */
+public record JwtPrincipal(Long userId, String username) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
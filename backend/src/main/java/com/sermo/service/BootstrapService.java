@@ -0,0 +1,69 @@
+package com.sermo.service;
+
+import com.sermo.dto.BootstrapDTO;
+import com.sermo.dto.ChannelDTO;
+import com.sermo.dto.ChannelKeyDTO;
+import com.sermo.dto.ServerDTO;
+import com.sermo.repository.ChannelRepository;
+import com.sermo.repository.ServerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Everything a client needs to render after login, assembled with a fixed number
+ * of queries no matter how many servers the user is in: servers, their channels,
+ * the user's channel keys, and one pipelined presence lookup.
+ */
+@Service
+public class BootstrapService {
+
+    private static final Logger log = LoggerFactory.getLogger(BootstrapService.class);
+
+    @Autowired
+    private ServerRepository serverRepository;
+
+    @Autowired
+    private ChannelRepository channelRepository;
+
+    @Autowired
+    private ChannelKeyService channelKeyService;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Transactional(readOnly = true)
+    public BootstrapDTO getBootstrap(Long userId, String username) {
+        List<ServerDTO> servers = serverRepository.findServerDTOsByMemberId(userId);
+        List<Long> serverIds = servers.stream()
+            .map(ServerDTO::getId)
+            .collect(Collectors.toList());
+
+        List<ChannelDTO> channels = serverIds.isEmpty()
+            ? List.of()
+            : channelRepository.findChannelDTOsByServerIds(serverIds);
+
+        Map<Long, String> keys = channelKeyService.getUserKeys(userId).stream()
+            .collect(Collectors.toMap(ChannelKeyDTO::getChannelId, ChannelKeyDTO::getEncryptedKey));
+
+        return new BootstrapDTO(userId, username, servers, channels, keys, onlineCounts(serverIds));
+    }
+
+    private Map<Long, Long> onlineCounts(List<Long> serverIds) {
+        try {
+            return presenceService.countOnlineInServers(serverIds);
+        } catch (RuntimeException e) {
+            // Presence is decoration; still let the client start without it
+            log.warn("Presence lookup for {} servers failed, bootstrapping without online counts",
+                serverIds.size(), e);
+            return new HashMap<>();
+        }
+    }
+}
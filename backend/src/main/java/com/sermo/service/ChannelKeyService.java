@@ -0,0 +1,142 @@
+package com.sermo.service;
+
+import com.sermo.dto.ChannelKeyDTO;
+import com.sermo.repository.ChannelKeyRepository;
+import com.sermo.repository.ServerMemberRepository;
+import com.sermo.repository.ServerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores per-user copies of channel keys. Distributing a rotated key to a whole
+ * channel is one request and one statement per chunk of keys instead of a round
+ * trip per member.
+ */
+@Service
+public class ChannelKeyService {
+
+    // A member who already has a key keeps it; only its owner or a rotation may replace it
+    private static final String INSERT_SQL =
+        "INSERT INTO channel_keys (channel_id, user_id, encrypted_key) " +
+        "SELECT ?, k.user_id, k.encrypted_key FROM unnest(?::bigint[], ?::text[]) AS k(user_id, encrypted_key) " +
+        "ON CONFLICT (channel_id, user_id) DO NOTHING";
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO channel_keys (channel_id, user_id, encrypted_key) " +
+        "SELECT ?, k.user_id, k.encrypted_key FROM unnest(?::bigint[], ?::text[]) AS k(user_id, encrypted_key) " +
+        "ON CONFLICT (channel_id, user_id) DO UPDATE SET encrypted_key = EXCLUDED.encrypted_key";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChannelKeyRepository channelKeyRepository;
+
+    @Autowired
+    private ServerMemberRepository serverMemberRepository;
+
+    @Autowired
+    private ServerRepository serverRepository;
+
+    @Autowired
+    private ChannelService channelService;
+
+    @Value("${sermo.keys.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${sermo.keys.max-keys-per-request:10000}")
+    private int maxKeysPerRequest;
+
+    /**
+     * Stores the given users' encrypted copies of a channel key and returns how many
+     * were written. Other users who already have a key for the channel keep it; the
+     * sender's own copy is replaced. The sender and every recipient must be members
+     * of the channel's server.
+     */
+    @Transactional
+    public int shareKeys(Long channelId, Long senderId, Map<Long, String> keysByUserId) {
+        checkMembers(channelId, senderId, keysByUserId);
+        Map<Long, String> others = new LinkedHashMap<>(keysByUserId);
+        String own = others.remove(senderId);
+        int written = write(INSERT_SQL, channelId, others);
+        if (own != null) {
+            written += write(UPSERT_SQL, channelId, Map.of(senderId, own));
+        }
+        return written;
+    }
+
+    /**
+     * Replaces the given users' copies of a channel key after a rotation. Only the
+     * owner of the channel's server may overwrite keys other members already have.
+     */
+    @Transactional
+    public int rotateKeys(Long channelId, Long senderId, Map<Long, String> keysByUserId) {
+        Long serverId = checkMembers(channelId, senderId, keysByUserId);
+        Long ownerId = serverRepository.findById(serverId)
+            .map(server -> server.getOwner().getId())
+            .orElseThrow(() -> new RuntimeException("Server not found"));
+        if (!ownerId.equals(senderId)) {
+            throw new RuntimeException("Only the server owner can rotate channel keys");
+        }
+        return write(UPSERT_SQL, channelId, keysByUserId);
+    }
+
+    private Long checkMembers(Long channelId, Long senderId, Map<Long, String> keysByUserId) {
+        if (keysByUserId.size() > maxKeysPerRequest) {
+            throw new RuntimeException("At most " + maxKeysPerRequest + " keys per request");
+        }
+
+        Long serverId = channelService.getServerIds(List.of(channelId)).get(channelId);
+        if (serverId == null) {
+            throw new RuntimeException("Channel not found");
+        }
+        Set<Long> recipients = new HashSet<>(keysByUserId.keySet());
+        recipients.add(senderId);
+        if (serverMemberRepository.findMemberIds(serverId, recipients).size() != recipients.size()) {
+            throw new RuntimeException("Keys can only be shared with members of the server");
+        }
+        return serverId;
+    }
+
+    /**
+     * Writes the keys in chunks of {@code batchSize}, one statement each, and returns
+     * the rows actually inserted or updated. A JDBC batch can't count them: the driver
+     * rewrites batched inserts and then only reports SUCCESS_NO_INFO.
+     */
+    private int write(String sql, Long channelId, Map<Long, String> keysByUserId) {
+        List<Map.Entry<Long, String>> rows = new ArrayList<>(keysByUserId.entrySet());
+        int written = 0;
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Map.Entry<Long, String>> chunk = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            written += jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setLong(1, channelId);
+                ps.setArray(2, con.createArrayOf("bigint", chunk.stream().map(Map.Entry::getKey).toArray()));
+                ps.setArray(3, con.createArrayOf("text", chunk.stream().map(Map.Entry::getValue).toArray()));
+                return ps;
+            });
+        }
+        return written;
+    }
+
+    public int shareKey(Long channelId, Long userId, String encryptedKey) {
+        Map<Long, String> keys = new LinkedHashMap<>();
+        keys.put(userId, encryptedKey);
+        return shareKeys(channelId, userId, keys);
+    }
+
+    public List<ChannelKeyDTO> getUserKeys(Long userId) {
+        return channelKeyRepository.findKeyDTOsByUserId(userId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.sermo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Hands out a monotonically increasing sequence number per channel. Clients use it
+ * to ask for exactly the messages they missed while disconnected.
+ *
+ * The counter is the channel row's {@code last_seq}, incremented inside the caller's
+ * transaction. The row lock is held until that transaction commits, so sequences
+ * become visible in the order they were issued and a rolled-back send gives its
+ * number back: a client that has seen N has seen everything below N. A channel
+ * without a counter yet is seeded from the highest sequence its messages hold.
+ */
+@Service
+public class ChannelSequencer {
+
+    private static final String ADVANCE_SQL =
+        "UPDATE channels SET last_seq = COALESCE(last_seq, " +
+        "(SELECT GREATEST(COALESCE(MAX(seq), 0), COALESCE(MAX(version), 0)) FROM messages WHERE channel_id = ?)) + ? " +
+        "WHERE id = ?";
+
+    // Reads back our own uncommitted value; the row is still locked by the update
+    private static final String CURRENT_SQL = "SELECT last_seq FROM channels WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long next(Long channelId) {
+        return reserve(channelId, 1);
+    }
+
+    /**
+     * Reserves {@code count} consecutive sequences and returns the highest; the range
+     * is {@code last - count + 1 .. last}. Callers reserving for several channels in
+     * one transaction must do so in ascending channel id order to avoid deadlocks.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long reserve(Long channelId, int count) {
+        if (jdbcTemplate.update(ADVANCE_SQL, channelId, count, channelId) == 0) {
+            throw new RuntimeException("Channel not found");
+        }
+        return jdbcTemplate.queryForObject(CURRENT_SQL, Long.class, channelId);
+    }
+}
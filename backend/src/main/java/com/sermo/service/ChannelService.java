@@ -1,16 +1,23 @@
 package com.sermo.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.sermo.dto.ChannelDTO;
 import com.sermo.model.Channel;
 import com.sermo.model.Server;
 import com.sermo.repository.ChannelRepository;
 import com.sermo.repository.ServerRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class ChannelService {
@@ -21,6 +28,19 @@ public class ChannelService {
     @Autowired
     private ServerRepository serverRepository;
 
+    @Value("${sermo.channels.server-id-cache-size:100000}")
+    private long serverIdCacheSize;
+
+    // Channels never move between servers, so resolved ids can be kept until evicted
+    private Cache<Long, Long> serverIdByChannel;
+
+    @PostConstruct
+    void init() {
+        serverIdByChannel = Caffeine.newBuilder()
+            .maximumSize(serverIdCacheSize)
+            .build();
+    }
+
     @Transactional
     public ChannelDTO createChannel(Long serverId, String name, String description, Boolean isPrivate) {
         Server server = serverRepository.findById(serverId)
@@ -38,10 +58,23 @@ public class ChannelService {
     }
 
     public List<ChannelDTO> getServerChannels(Long serverId) {
-        return channelRepository.findByServerId(serverId)
-            .stream()
-            .map(this::toDTO)
-            .collect(Collectors.toList());
+        return channelRepository.findChannelDTOsByServerId(serverId);
+    }
+
+    /**
+     * Maps channel ids to their server ids; unknown channels are left out.
+     */
+    public Map<Long, Long> getServerIds(Collection<Long> channelIds) {
+        // Misses are resolved in one query; unknown channels are not cached
+        return serverIdByChannel.getAll(channelIds, this::loadServerIds);
+    }
+
+    private Map<Long, Long> loadServerIds(Set<? extends Long> channelIds) {
+        Map<Long, Long> serverIds = new HashMap<>();
+        for (Object[] row : channelRepository.findServerIds(List.copyOf(channelIds))) {
+            serverIds.put((Long) row[0], (Long) row[1]);
+        }
+        return serverIds;
     }
 
     private ChannelDTO toDTO(Channel channel) {
@@ -0,0 +1,100 @@
+package com.sermo.service;
+
+import com.sermo.dto.DirectMessageDTO;
+import com.sermo.dto.DirectMessagePageDTO;
+import com.sermo.model.DirectMessage;
+import com.sermo.model.User;
+import com.sermo.repository.DirectMessageRepository;
+import com.sermo.repository.UserRepository;
+import com.sermo.util.ConversationKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Service
+public class DirectMessageService {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private DirectMessageRepository directMessageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Transactional
+    public DirectMessageDTO sendDirectMessage(Long senderId, Long receiverId, String encryptedContent, String nonce) {
+        User sender = userRepository.findById(senderId)
+            .orElseThrow(() -> new RuntimeException("User not found"));
+
+        User receiver = userRepository.findById(receiverId)
+            .orElseThrow(() -> new RuntimeException("Recipient not found"));
+
+        DirectMessage message = new DirectMessage();
+        message.setSender(sender);
+        message.setReceiver(receiver);
+        message.setEncryptedContent(encryptedContent);
+        message.setNonce(nonce);
+
+        message = directMessageRepository.save(message);
+
+        return toDTO(message);
+    }
+
+    /**
+     * One page of the conversation between two users, oldest first. Paging works
+     * like channel history: no cursor returns the latest page.
+     */
+    public DirectMessagePageDTO getConversationHistory(Long userId, Long otherUserId,
+                                                      String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new RuntimeException("Use either before or after, not both");
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String conversationKey = ConversationKey.of(userId, otherUserId);
+        // Fetch one extra row to learn whether another page exists
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<DirectMessageDTO> rows;
+        if (after != null) {
+            HistoryCursor cursor = HistoryCursor.decode(after);
+            rows = directMessageRepository.findAfter(conversationKey, cursor.createdAt(), cursor.id(), page);
+        } else if (before != null) {
+            HistoryCursor cursor = HistoryCursor.decode(before);
+            rows = directMessageRepository.findBefore(conversationKey, cursor.createdAt(), cursor.id(), page);
+        } else {
+            rows = directMessageRepository.findLatest(conversationKey, page);
+        }
+
+        List<DirectMessageDTO> messages = new ArrayList<>(rows.subList(0, Math.min(size, rows.size())));
+        String nextCursor = null;
+        if (rows.size() > size) {
+            DirectMessageDTO last = messages.get(messages.size() - 1);
+            nextCursor = new HistoryCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        if (after == null) {
+            // Backward pages are read newest first
+            Collections.reverse(messages);
+        }
+        return new DirectMessagePageDTO(messages, nextCursor);
+    }
+
+    private DirectMessageDTO toDTO(DirectMessage message) {
+        return new DirectMessageDTO(
+            message.getId(),
+            message.getSender().getId(),
+            message.getSender().getUsername(),
+            message.getReceiver().getId(),
+            message.getEncryptedContent(),
+            message.getNonce(),
+            message.getCreatedAt(),
+            message.getEditedAt()
+        );
+    }
+}
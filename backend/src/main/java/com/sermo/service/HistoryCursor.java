@@ -0,0 +1,30 @@
+package com.sermo.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Opaque position in a (createdAt, id) ordered history, encoded as "{epochMicros}_{id}".
+ */
+record HistoryCursor(LocalDateTime createdAt, Long id) {
+
+    static HistoryCursor decode(String value) {
+        try {
+            int separator = value.indexOf('_');
+            long micros = Long.parseLong(value.substring(0, separator));
+            LocalDateTime createdAt = LocalDateTime.ofEpochSecond(
+                Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000,
+                ZoneOffset.UTC
+            );
+            return new HistoryCursor(createdAt, Long.parseLong(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        long micros = createdAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + createdAt.getNano() / 1000;
+        return micros + "_" + id;
+    }
+}
@@ -0,0 +1,10 @@
+package com.sermo.service;
+
+import com.sermo.dto.MessageDTO;
+
+/**
+ * Published once an edit or deletion has committed, so the WebSocket layer can
+ * push it to the channel without the service depending on it.
+ */
+public record MessageChangedEvent(MessageDTO message) {
+}
@@ -0,0 +1,136 @@
+package com.sermo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sermo.dto.MessageDTO;
+import com.sermo.handler.BinaryFrameCodec;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Streams a channel's full history straight from a database cursor to the
+ * response, one row at a time, so memory use does not grow with channel size.
+ */
+@Service
+public class MessageExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageExportService.class);
+
+    private static final String EXPORT_SQL =
+        "SELECT m.id, m.sender_id, u.username, m.channel_id, m.encrypted_content, m.nonce, m.created_at, m.edited_at, m.seq, m.version " +
+        "FROM messages m JOIN users u ON u.id = m.sender_id " +
+        "WHERE m.channel_id = ? AND m.deleted_at IS NULL ORDER BY m.created_at, m.id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${sermo.messages.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate cursorTemplate;
+    private TransactionTemplate readOnlyTransaction;
+    private ObjectWriter messageWriter;
+
+    @PostConstruct
+    void init() {
+        // Postgres only honours the fetch size (and streams through a cursor)
+        // when the statement runs inside a transaction
+        cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        messageWriter = objectMapper.writerFor(MessageDTO.class);
+    }
+
+    /**
+     * Writes one JSON-encoded message per line.
+     */
+    public void exportNdjson(Long channelId, OutputStream out) {
+        export(channelId, out, (message, stream) -> {
+            stream.write(messageWriter.writeValueAsBytes(message));
+            stream.write('\n');
+        });
+    }
+
+    /**
+     * Writes binary MESSAGE frames, each prefixed with its u32 length as in a BATCH frame.
+     * Rows whose content or nonce is not valid base64 have no binary form and are skipped.
+     */
+    public void exportBinary(Long channelId, OutputStream out) {
+        byte[] length = new byte[4];
+        export(channelId, out, (message, stream) -> {
+            byte[] frame;
+            try {
+                frame = BinaryFrameCodec.encodeMessage(message);
+            } catch (IllegalArgumentException e) {
+                // Content and nonce are stored as the client sent them
+                log.warn("Skipping message {} in binary export of channel {}: {}", message.getId(), channelId, e.getMessage());
+                return;
+            }
+            ByteBuffer.wrap(length).putInt(frame.length);
+            stream.write(length);
+            stream.write(frame);
+        });
+    }
+
+    private void export(Long channelId, OutputStream out, RowWriter writer) {
+        BufferedOutputStream stream = new BufferedOutputStream(out, 64 * 1024);
+        readOnlyTransaction.executeWithoutResult(status ->
+            cursorTemplate.query(EXPORT_SQL, rs -> {
+                try {
+                    writer.write(toDTO(rs), stream);
+                } catch (IOException e) {
+                    // Usually the client went away; abort the query
+                    throw new UncheckedIOException(e);
+                }
+            }, channelId));
+        try {
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MessageDTO toDTO(ResultSet rs) throws SQLException {
+        Timestamp editedAt = rs.getTimestamp("edited_at");
+        return new MessageDTO(
+            rs.getLong("id"),
+            rs.getLong("sender_id"),
+            rs.getString("username"),
+            rs.getLong("channel_id"),
+            rs.getString("encrypted_content"),
+            rs.getString("nonce"),
+            rs.getTimestamp("created_at").toLocalDateTime(),
+            editedAt != null ? editedAt.toLocalDateTime() : null,
+            rs.getObject("seq", Long.class),
+            rs.getObject("version", Long.class),
+            null
+        );
+    }
+
+    private interface RowWriter {
+        void write(MessageDTO message, OutputStream stream) throws IOException;
+    }
+}
@@ -0,0 +1,281 @@
+package com.sermo.service;
+
+import com.sermo.dto.MessageDTO;
+import com.sermo.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind path for channel messages. Accepted messages get their id and
+ * timestamp immediately, while worker threads flush them to Postgres in multi-row
+ * batches from a bounded queue. Sequences are reserved inside the flush transaction,
+ * so they commit in order like those of the synchronous path.
+ *
+ * By default callers broadcast a message as soon as it is accepted, before it has a
+ * sequence; clients pick the sequence up when they next resume or reload history. With
+ * ack-after-flush they broadcast once {@link PendingMessage#flushed()} completes
+ * instead, so nothing that fails to persist is ever seen by other clients or nodes.
+ */
+@Service
+public class MessageIngestPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageIngestPipeline.class);
+
+    private static final String INSERT_SQL =
+        "INSERT INTO messages (id, sender_id, channel_id, encrypted_content, nonce, created_at, seq, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private ChannelSequencer channelSequencer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Value("${sermo.messages.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sermo.messages.write-behind.ack-after-flush:false}")
+    private boolean ackAfterFlush;
+
+    @Value("${sermo.messages.write-behind.flush-size:500}")
+    private int flushSize;
+
+    @Value("${sermo.messages.write-behind.flush-interval:50}")
+    private long flushInterval;
+
+    @Value("${sermo.messages.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${sermo.messages.write-behind.workers:2}")
+    private int workers;
+
+    private BlockingQueue<PendingMessage> queue;
+    private ExecutorService workerPool;
+    private volatile boolean running;
+
+    private Counter rejected;
+    private Counter failed;
+    private DistributionSummary batchSize;
+    private Timer flushLatency;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        rejected = meterRegistry.counter("sermo.messages.ingest.rejected");
+        failed = meterRegistry.counter("sermo.messages.ingest.failed");
+        batchSize = DistributionSummary.builder("sermo.messages.ingest.batch.size").register(meterRegistry);
+        flushLatency = Timer.builder("sermo.messages.ingest.flush.latency").register(meterRegistry);
+        Gauge.builder("sermo.messages.ingest.queued", queue, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        workerPool = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("message-flush-"));
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::runWorker);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        // Workers keep draining until the queue is empty, then exit
+        running = false;
+        workerPool.shutdown();
+        workerPool.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * When true, callers should only broadcast once {@link PendingMessage#flushed()} completes.
+     */
+    public boolean isAckAfterFlush() {
+        return ackAfterFlush;
+    }
+
+    /**
+     * Queues a message without blocking. Unknown channels and other bad rows are only
+     * detected by the flush, which fails the message's future.
+     */
+    public PendingMessage accept(Long userId, String username, Long channelId, String encryptedContent, String nonce) {
+        // Reject what the batch insert would fail on anyway, while the sender can still be told
+        if (encryptedContent == null || nonce == null) {
+            throw new RuntimeException("Message content and nonce are required");
+        }
+        MessageDTO message = new MessageDTO(
+            idGenerator.nextId(),
+            userId,
+            username,
+            channelId,
+            encryptedContent,
+            nonce,
+            LocalDateTime.now(),
+            null,
+            null,
+            null,
+            null
+        );
+        PendingMessage pending = new PendingMessage(message, new CompletableFuture<>());
+
+        // Backpressure: the caller runs on a WebSocket thread, so reject rather than wait
+        if (!queue.offer(pending)) {
+            rejected.increment();
+            throw new RuntimeException("Message queue is full");
+        }
+        return pending;
+    }
+
+    private void runWorker() {
+        List<PendingMessage> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        PendingMessage first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        // Linger up to one flush interval for the batch to fill
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0) {
+                break;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                assignSequences(batch);
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+            });
+            batch.forEach(this::complete);
+        } catch (RuntimeException e) {
+            log.warn("Batch insert of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            // One bad row (e.g. a deleted channel) fails the whole batch; retry rows individually
+            batch.forEach(this::flushOne);
+        }
+        batchSize.record(batch.size());
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void flushOne(PendingMessage pending) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                assignSequences(List.of(pending));
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, pending));
+            });
+            complete(pending);
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.error("Failed to persist message {} in channel {}",
+                pending.message().getId(), pending.message().getChannelId(), e);
+            pending.flushed().completeExceptionally(e);
+        }
+    }
+
+    private void assignSequences(List<PendingMessage> batch) {
+        // One reservation per channel, taken in channel id order so concurrent flushes can't deadlock
+        Map<Long, List<MessageDTO>> byChannel = new TreeMap<>();
+        for (PendingMessage pending : batch) {
+            byChannel.computeIfAbsent(pending.message().getChannelId(), id -> new ArrayList<>())
+                .add(pending.message());
+        }
+        byChannel.forEach((channelId, messages) -> {
+            long seq = channelSequencer.reserve(channelId, messages.size()) - messages.size();
+            for (MessageDTO message : messages) {
+                seq++;
+                message.setSeq(seq);
+                message.setVersion(seq);
+            }
+        });
+    }
+
+    private void complete(PendingMessage pending) {
+        // Only persisted messages may be served from the cache
+        recentMessageCache.append(pending.message());
+        pending.flushed().complete(pending.message());
+    }
+
+    private void bind(PreparedStatement ps, PendingMessage pending) throws SQLException {
+        MessageDTO message = pending.message();
+        ps.setLong(1, message.getId());
+        ps.setLong(2, message.getSenderId());
+        ps.setLong(3, message.getChannelId());
+        ps.setString(4, message.getEncryptedContent());
+        ps.setString(5, message.getNonce());
+        ps.setTimestamp(6, Timestamp.valueOf(message.getCreatedAt()));
+        ps.setLong(7, message.getSeq());
+        ps.setLong(8, message.getVersion());
+    }
+
+    public record PendingMessage(MessageDTO message, CompletableFuture<MessageDTO> flushed) {
+    }
+}
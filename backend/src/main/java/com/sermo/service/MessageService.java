@@ -1,23 +1,44 @@
 package com.sermo.service;
 
+import com.sermo.dto.MessageChangeDTO;
+import com.sermo.dto.MessageChangePageDTO;
 import com.sermo.dto.MessageDTO;
+import com.sermo.dto.MessagePageDTO;
 import com.sermo.model.Channel;
 import com.sermo.model.Message;
 import com.sermo.model.User;
 import com.sermo.repository.ChannelRepository;
 import com.sermo.repository.MessageRepository;
 import com.sermo.repository.UserRepository;
+import com.sermo.util.SingleFlight;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 public class MessageService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private MessageRepository messageRepository;
 
@@ -27,6 +48,42 @@ public class MessageService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private ChannelSequencer channelSequencer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Concurrent identical history reads share one database load
+    private final SingleFlight<Long, List<MessageDTO>> channelLoads = new SingleFlight<>();
+    private final SingleFlight<String, MessagePageDTO> pageLoads = new SingleFlight<>();
+    private final SingleFlight<Long, RecentMessageCache.Snapshot> recentLoads = new SingleFlight<>();
+
+    @PostConstruct
+    void init() {
+        registerLoadMetrics("channel", channelLoads);
+        registerLoadMetrics("page", pageLoads);
+        registerLoadMetrics("recent", recentLoads);
+    }
+
+    private void registerLoadMetrics(String kind, SingleFlight<?, ?> loads) {
+        FunctionCounter.builder("sermo.messages.history.loads", loads, SingleFlight::getLoads)
+            .tag("kind", kind)
+            .register(meterRegistry);
+        FunctionCounter.builder("sermo.messages.history.coalesced", loads, SingleFlight::getCoalesced)
+            .tag("kind", kind)
+            .register(meterRegistry);
+    }
+
     @Transactional
     public MessageDTO sendMessage(Long userId, Long channelId, String encryptedContent, String nonce) {
         User user = userRepository.findById(userId)
@@ -40,35 +97,300 @@ public class MessageService {
         message.setChannel(channel);
         message.setEncryptedContent(encryptedContent);
         message.setNonce(nonce);
+        long seq = channelSequencer.next(channelId);
+        message.setSeq(seq);
+        message.setVersion(seq);
 
         message = messageRepository.save(message);
 
-        return toDTO(message);
+        MessageDTO dto = toDTO(message);
+        afterCommit(() -> recentMessageCache.append(dto));
+        return dto;
     }
 
     public List<MessageDTO> getChannelMessages(Long channelId) {
-        return messageRepository.findByChannelIdOrderByCreatedAtAsc(channelId)
-            .stream()
-            .map(this::toDTO)
-            .collect(Collectors.toList());
+        // Channels that fit entirely in the recent-message cache skip the database
+        RecentMessageCache.Snapshot cached = recentMessageCache.get(channelId);
+        if (cached != null && !cached.hasOlder()) {
+            return cached.entries().stream()
+                .map(RecentMessageCache.Entry::message)
+                .collect(Collectors.toList());
+        }
+        return channelLoads.load(channelId, () -> loadChannelMessages(channelId));
+    }
+
+    private List<MessageDTO> loadChannelMessages(Long channelId) {
+        List<MessageDTO> messages = messageRepository.findDTOsByChannelId(channelId);
+
+        RecentMessageCache.Ring ring = recentMessageCache.beginLoad(channelId);
+        if (ring != null) {
+            int recent = Math.max(0, messages.size() - recentMessageCache.getPerChannel());
+            recentMessageCache.fill(ring, messages.subList(recent, messages.size()), recent > 0);
+        }
+        return messages;
+    }
+
+    /**
+     * Returns one page of channel history, oldest first. Without a cursor the
+     * latest page is returned; {@code before} pages backwards and {@code after}
+     * pages forwards from a cursor returned by a previous call.
+     */
+    public MessagePageDTO getChannelHistory(Long channelId, String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new RuntimeException("Use either before or after, not both");
+        }
+        int size = pageSize(limit);
+        String key = channelId + ":" + before + ":" + after + ":" + size;
+        return pageLoads.load(key, () -> loadHistoryPage(channelId, before, after, size));
+    }
+
+    private MessagePageDTO loadHistoryPage(Long channelId, String before, String after, int size) {
+        // Fetch one extra row to learn whether another page exists
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<MessageDTO> rows;
+        if (after != null) {
+            HistoryCursor cursor = HistoryCursor.decode(after);
+            rows = messageRepository.findAfter(channelId, cursor.createdAt(), cursor.id(), page);
+        } else if (before != null) {
+            HistoryCursor cursor = HistoryCursor.decode(before);
+            rows = messageRepository.findBefore(channelId, cursor.createdAt(), cursor.id(), page);
+        } else {
+            rows = messageRepository.findLatest(channelId, page);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<MessageDTO> messages = new ArrayList<>(rows.subList(0, Math.min(size, rows.size())));
+
+        String nextCursor = null;
+        if (hasMore) {
+            nextCursor = cursorOf(messages.get(messages.size() - 1)).encode();
+        }
+        if (after == null) {
+            // Backward pages are read newest first
+            Collections.reverse(messages);
+        }
+        return new MessagePageDTO(messages, nextCursor);
+    }
+
+    /**
+     * The latest page of channel history as JSON, in the same shape as
+     * {@link #getChannelHistory}. Hot channels are answered from the recent-message
+     * cache by splicing together each message's pre-serialized bytes.
+     */
+    public byte[] getLatestHistoryJson(Long channelId, Integer limit) {
+        int size = pageSize(limit);
+        RecentMessageCache.Snapshot snapshot = size <= recentMessageCache.getPerChannel()
+            ? recentSnapshot(channelId)
+            : null;
+
+        try {
+            if (snapshot == null) {
+                return objectMapper.writeValueAsBytes(getChannelHistory(channelId, null, null, limit));
+            }
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode history", e);
+        }
+
+        List<RecentMessageCache.Entry> entries = snapshot.entries();
+        int from = Math.max(0, entries.size() - size);
+        boolean hasMore = from > 0 || snapshot.hasOlder();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        out.writeBytes("{\"messages\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = from; i < entries.size(); i++) {
+            if (i > from) {
+                out.write(',');
+            }
+            out.writeBytes(entries.get(i).json());
+        }
+        String nextCursor = hasMore && from < entries.size()
+            ? "\"" + cursorOf(entries.get(from).message()).encode() + "\""
+            : "null";
+        out.writeBytes(("],\"nextCursor\":" + nextCursor + "}").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private RecentMessageCache.Snapshot recentSnapshot(Long channelId) {
+        RecentMessageCache.Snapshot cached = recentMessageCache.get(channelId);
+        if (cached != null) {
+            return cached;
+        }
+        return recentLoads.load(channelId, () -> loadRecent(channelId));
+    }
+
+    private RecentMessageCache.Snapshot loadRecent(Long channelId) {
+        RecentMessageCache.Ring ring = recentMessageCache.beginLoad(channelId);
+        if (ring == null) {
+            return null;
+        }
+
+        int capacity = recentMessageCache.getPerChannel();
+        List<MessageDTO> rows = messageRepository.findLatest(channelId, PageRequest.of(0, capacity + 1));
+        List<MessageDTO> messages = new ArrayList<>(rows.subList(0, Math.min(capacity, rows.size())));
+        Collections.reverse(messages);
+        return recentMessageCache.fill(ring, messages, rows.size() > capacity);
+    }
+
+    /**
+     * Messages with a sequence above {@code afterSeq}, in sequence order, for a client
+     * resuming after a disconnect. Returns null if more than {@code limit} were missed;
+     * the client should then reload history instead of replaying.
+     */
+    public List<MessageDTO> getMessagesSince(Long channelId, long afterSeq, int limit) {
+        RecentMessageCache.Snapshot cached = recentMessageCache.get(channelId);
+        if (cached != null && coversSeq(cached, afterSeq)) {
+            List<MessageDTO> missed = cached.entries().stream()
+                .map(RecentMessageCache.Entry::message)
+                .filter(message -> message.getSeq() != null && message.getSeq() > afterSeq)
+                .sorted(Comparator.comparing(MessageDTO::getSeq))
+                .collect(Collectors.toList());
+            if (isContiguous(missed, afterSeq)) {
+                return missed.size() > limit ? null : missed;
+            }
+        }
+
+        List<MessageDTO> rows = messageRepository.findSinceSeq(channelId, afterSeq, PageRequest.of(0, limit + 1));
+        return rows.size() > limit ? null : rows;
+    }
+
+    /**
+     * Cache appends run after commit, so concurrent sends can land out of sequence
+     * order; a gap may be a message that is committed but not appended yet. Edits
+     * and deletions leave gaps too, and those resumes simply go to the database.
+     */
+    private static boolean isContiguous(List<MessageDTO> messages, long afterSeq) {
+        long expected = afterSeq + 1;
+        for (MessageDTO message : messages) {
+            if (message.getSeq() != expected) {
+                return false;
+            }
+            expected++;
+        }
+        return true;
+    }
+
+    private static boolean coversSeq(RecentMessageCache.Snapshot snapshot, long afterSeq) {
+        // The ring holds the whole channel, or reaches back to the last message the client saw
+        if (!snapshot.hasOlder()) {
+            return true;
+        }
+        List<RecentMessageCache.Entry> entries = snapshot.entries();
+        Long oldest = entries.isEmpty() ? null : entries.get(0).message().getSeq();
+        return oldest != null && oldest <= afterSeq;
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     @Transactional
     public MessageDTO editMessage(Long messageId, Long userId, String encryptedContent, String nonce) {
+        Message message = findOwnMessage(messageId, userId, "edit");
+
+        message.setEncryptedContent(encryptedContent);
+        message.setNonce(nonce);
+        message.setEditedAt(LocalDateTime.now());
+        message.setVersion(channelSequencer.next(message.getChannel().getId()));
+
+        message = messageRepository.save(message);
+
+        MessageDTO dto = toDTO(message);
+        afterCommit(() -> {
+            recentMessageCache.update(dto);
+            eventPublisher.publishEvent(new MessageChangedEvent(dto));
+        });
+        return dto;
+    }
+
+    /**
+     * Deletes a message by turning it into a tombstone: the ciphertext is cleared
+     * and the row stays behind so the change feed can report the deletion.
+     */
+    @Transactional
+    public MessageDTO deleteMessage(Long messageId, Long userId) {
+        Message message = findOwnMessage(messageId, userId, "delete");
+
+        message.setEncryptedContent("");
+        message.setNonce("");
+        message.setDeletedAt(LocalDateTime.now());
+        message.setVersion(channelSequencer.next(message.getChannel().getId()));
+
+        message = messageRepository.save(message);
+
+        MessageDTO dto = toDTO(message);
+        afterCommit(() -> {
+            recentMessageCache.remove(dto);
+            eventPublisher.publishEvent(new MessageChangedEvent(dto));
+        });
+        return dto;
+    }
+
+    private Message findOwnMessage(Long messageId, Long userId, String action) {
         Message message = messageRepository.findById(messageId)
+            .filter(found -> found.getDeletedAt() == null)
             .orElseThrow(() -> new RuntimeException("Message not found"));
 
         if (!message.getSender().getId().equals(userId)) {
-            throw new RuntimeException("Unauthorized to edit this message");
+            throw new RuntimeException("Unauthorized to " + action + " this message");
         }
+        return message;
+    }
 
-        message.setEncryptedContent(encryptedContent);
-        message.setNonce(nonce);
-        message.setEditedAt(LocalDateTime.now());
+    /**
+     * Creates, edits and deletions in a channel with a version above {@code since},
+     * oldest first. Versions share the per-channel sequence, so a client can pass the
+     * highest seq or version it has seen.
+     */
+    public MessageChangePageDTO getChanges(Long channelId, long since, Integer limit) {
+        int size = pageSize(limit);
+        List<MessageDTO> rows = messageRepository.findChangesSince(channelId, since, PageRequest.of(0, size + 1));
 
-        message = messageRepository.save(message);
+        boolean hasMore = rows.size() > size;
+        List<MessageChangeDTO> changes = rows.subList(0, Math.min(size, rows.size())).stream()
+            .map(MessageService::toChange)
+            .collect(Collectors.toList());
+        long version = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+        return new MessageChangePageDTO(changes, version, hasMore);
+    }
+
+    public static MessageChangeDTO toChange(MessageDTO message) {
+        if (message.getDeletedAt() != null) {
+            // Copy rather than clear the input, which may be shared (e.g. cached) state
+            MessageDTO tombstone = new MessageDTO(
+                message.getId(),
+                message.getSenderId(),
+                message.getSenderUsername(),
+                message.getChannelId(),
+                null,
+                null,
+                message.getCreatedAt(),
+                message.getEditedAt(),
+                message.getSeq(),
+                message.getVersion(),
+                message.getDeletedAt()
+            );
+            return new MessageChangeDTO("DELETE", message.getVersion(), tombstone);
+        }
+        String type = message.getEditedAt() != null ? "EDIT" : "CREATE";
+        return new MessageChangeDTO(type, message.getVersion(), message);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 
-        return toDTO(message);
+    private static HistoryCursor cursorOf(MessageDTO message) {
+        return new HistoryCursor(message.getCreatedAt(), message.getId());
     }
 
     private MessageDTO toDTO(Message message) {
@@ -80,7 +402,10 @@ public class MessageService {
             message.getEncryptedContent(),
             message.getNonce(),
             message.getCreatedAt(),
-            message.getEditedAt()
+            message.getEditedAt(),
+            message.getSeq(),
+            message.getVersion(),
+            message.getDeletedAt()
         );
     }
 }
@@ -0,0 +1,120 @@
+package com.sermo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects presence changes in memory and writes them to Redis as one pipelined
+ * batch per tick, so WebSocket threads never wait on Redis. Repeated heartbeats
+ * from a user within a tick collapse into a single write.
+ */
+@Service
+public class PresenceBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceBatcher.class);
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sermo.presence.max-pending:100000}")
+    private int maxPending;
+
+    // userId -> net change since the last flush
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    private Counter dropped;
+    private DistributionSummary batchSize;
+    private Timer flushLatency;
+
+    @PostConstruct
+    void init() {
+        dropped = meterRegistry.counter("sermo.presence.dropped");
+        batchSize = DistributionSummary.builder("sermo.presence.flush.batch.size").register(meterRegistry);
+        flushLatency = Timer.builder("sermo.presence.flush.latency").register(meterRegistry);
+        Gauge.builder("sermo.presence.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    public void online(Long userId, String channelId) {
+        update(userId, entry -> entry.channels.add(channelId));
+    }
+
+    public void offline(Long userId) {
+        update(userId, entry -> {
+            // Going offline supersedes heartbeats recorded earlier in the tick
+            entry.offline = true;
+            entry.channels.clear();
+        });
+    }
+
+    private void update(Long userId, Consumer<Pending> change) {
+        if (pending.size() >= maxPending && !pending.containsKey(userId)) {
+            dropped.increment();
+            return;
+        }
+        pending.compute(userId, (id, entry) -> {
+            Pending next = entry != null ? entry : new Pending();
+            change.accept(next);
+            return next;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${sermo.presence.flush-interval:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PresenceService.PresenceUpdate> updates = new ArrayList<>(pending.size());
+        for (Long userId : pending.keySet()) {
+            Pending entry = pending.remove(userId);
+            if (entry != null) {
+                updates.add(new PresenceService.PresenceUpdate(userId, entry.offline, entry.channels));
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            presenceService.apply(updates);
+        } catch (RuntimeException e) {
+            // Heartbeats repeat, so a lost batch heals on the next refresh
+            dropped.increment(updates.size());
+            log.warn("Dropped a batch of {} presence updates", updates.size(), e);
+        }
+        batchSize.record(updates.size());
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    // Mutated only inside ConcurrentHashMap.compute, read after removal
+    private static final class Pending {
+        private boolean offline;
+        private final Set<String> channels = new HashSet<>();
+    }
+}
@@ -1,54 +1,292 @@
 package com.sermo.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Presence and typing state in Redis, laid out so no operation has to scan the keyspace:
+ *
+ * <pre>
+ * presence:user:{userId}        hash   channelId -> expiry millis   (channels a user is online in)
+ * presence:channel:{channelId}  zset   userId scored by expiry      (users online in a channel)
+ * typing:channel:{channelId}    zset   userId scored by expiry      (users typing in a channel)
+ * presence:server:{serverId}:{bucket}  bitmap  bit userId set if online during the bucket
+ * </pre>
+ *
+ * Entries past their score count as gone; each key also carries a TTL so idle
+ * users and channels disappear on their own.
+ *
+ * Server bitmaps are bucketed by half the presence TTL. A heartbeat sets the user's
+ * bit in the current and the next two buckets, so the current bucket alone holds
+ * everyone seen within the last TTL and can be counted with a single BITCOUNT. A user
+ * whose heartbeats stop keeps counting for at most 1.5x the TTL; going offline
+ * explicitly clears every bucket at once. Every write refreshes the bitmap's expiry,
+ * so clearing a bit never leaves a key behind without one.
+ *
+ * Migration: the previous layout used one string key per user and channel
+ * ("presence:{userId}:{channelId}", "typing:{channelId}:{userId}"), all with
+ * short TTLs. While older nodes are still running, set
+ * sermo.presence.legacy-writes=true so this node keeps writing those keys too.
+ * Once every node runs this version, turn it off and the legacy keys expire
+ * within a minute; nothing needs to be copied.
+ */
 @Service
 public class PresenceService {
 
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
-    private static final String PRESENCE_PREFIX = "presence:";
-    private static final String TYPING_PREFIX = "typing:";
+    @Autowired
+    private ChannelService channelService;
+
+    @Value("${sermo.presence.legacy-writes:false}")
+    private boolean legacyWrites;
+
+    private static final String USER_PRESENCE_PREFIX = "presence:user:";
+    private static final String CHANNEL_PRESENCE_PREFIX = "presence:channel:";
+    private static final String CHANNEL_TYPING_PREFIX = "typing:channel:";
+    private static final String SERVER_PRESENCE_PREFIX = "presence:server:";
+    private static final int BITMAP_PAGE_BYTES = 4096;
+    private static final String LEGACY_PRESENCE_PREFIX = "presence:";
+    private static final String LEGACY_TYPING_PREFIX = "typing:";
     private static final long PRESENCE_TTL = 60; // 60 seconds
     private static final long TYPING_TTL = 5; // 5 seconds
+    private static final long SERVER_BUCKET_SECONDS = PRESENCE_TTL / 2;
+    private static final int SERVER_BUCKETS_AHEAD = 2; // SERVER_BUCKETS_AHEAD * SERVER_BUCKET_SECONDS >= PRESENCE_TTL
+
+    /**
+     * Applies a batch of presence changes in two pipelined round trips: one to
+     * read the channels of users going offline, one for all the writes.
+     */
+    public void apply(List<PresenceUpdate> updates) {
+        List<PresenceUpdate> goingOffline = updates.stream()
+            .filter(PresenceUpdate::offline)
+            .collect(Collectors.toList());
+        List<Object> offlineChannels = goingOffline.isEmpty()
+            ? List.of()
+            : redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (PresenceUpdate update : goingOffline) {
+                        ((RedisOperations<String, String>) operations).opsForHash()
+                            .keys(USER_PRESENCE_PREFIX + update.userId());
+                    }
+                    return null;
+                }
+            });
+
+        // Server bitmaps are keyed by server, so resolve every channel involved
+        Set<Long> channelIds = new HashSet<>();
+        for (int i = 0; i < goingOffline.size(); i++) {
+            ((Collection<?>) offlineChannels.get(i)).forEach(channelId -> addChannelId(channelIds, channelId));
+        }
+        updates.forEach(update -> update.onlineChannels().forEach(channelId -> addChannelId(channelIds, channelId)));
+        Map<Long, Long> serverIds = channelIds.isEmpty() ? Map.of() : channelService.getServerIds(channelIds);
+
+        long now = System.currentTimeMillis();
+        long expiresAt = now + TimeUnit.SECONDS.toMillis(PRESENCE_TTL);
+        long bucket = bucketOf(now);
+        execute(operations -> {
+            for (int i = 0; i < goingOffline.size(); i++) {
+                Long userId = goingOffline.get(i).userId();
+                for (Object channelId : (Collection<?>) offlineChannels.get(i)) {
+                    operations.opsForZSet().remove(CHANNEL_PRESENCE_PREFIX + channelId, userId.toString());
+                    if (legacyWrites) {
+                        operations.delete(LEGACY_PRESENCE_PREFIX + userId + ":" + channelId);
+                    }
+                    writeServerBit(operations, serverIds.get(parseId(channelId)), userId, bucket, false);
+                }
+                operations.delete(USER_PRESENCE_PREFIX + userId);
+            }
+            // Online refreshes were recorded after any offline for the same user
+            for (PresenceUpdate update : updates) {
+                for (String channelId : update.onlineChannels()) {
+                    writeOnline(operations, update.userId(), channelId, expiresAt);
+                    writeServerBit(operations, serverIds.get(parseId(channelId)), update.userId(), bucket, true);
+                }
+            }
+        });
+    }
+
+    private void writeOnline(RedisOperations<String, String> operations, Long userId, String channelId, long expiresAt) {
+        String userKey = USER_PRESENCE_PREFIX + userId;
+        String channelKey = CHANNEL_PRESENCE_PREFIX + channelId;
+        operations.opsForHash().put(userKey, channelId, Long.toString(expiresAt));
+        operations.expire(userKey, PRESENCE_TTL, TimeUnit.SECONDS);
+        operations.opsForZSet().add(channelKey, userId.toString(), expiresAt);
+        operations.expire(channelKey, PRESENCE_TTL, TimeUnit.SECONDS);
+        if (legacyWrites) {
+            operations.opsForValue().set(LEGACY_PRESENCE_PREFIX + userId + ":" + channelId,
+                "online", PRESENCE_TTL, TimeUnit.SECONDS);
+        }
+    }
+
+    private void writeServerBit(RedisOperations<String, String> operations, Long serverId, Long userId,
+                                long bucket, boolean online) {
+        if (serverId == null) {
+            return;
+        }
+        for (long b = bucket; b <= bucket + SERVER_BUCKETS_AHEAD; b++) {
+            String key = serverKey(serverId, b);
+            operations.opsForValue().setBit(key, userId, online);
+            // Outlives the last bucket it can be read as, including when only clearing a bit
+            operations.expire(key, SERVER_BUCKET_SECONDS * (SERVER_BUCKETS_AHEAD + 2), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Number of users online in any channel of the server.
+     */
+    public long countOnlineInServer(Long serverId) {
+        byte[] key = serverKey(serverId, bucketOf(System.currentTimeMillis())).getBytes(StandardCharsets.UTF_8);
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().bitCount(key));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Online counts for several servers in one pipelined round trip, keyed by server id.
+     */
+    public Map<Long, Long> countOnlineInServers(List<Long> serverIds) {
+        if (serverIds.isEmpty()) {
+            return Map.of();
+        }
+        long bucket = bucketOf(System.currentTimeMillis());
+        List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long serverId : serverIds) {
+                connection.stringCommands().bitCount(serverKey(serverId, bucket).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
 
-    public void setOnline(Long userId, String channelId) {
-        String key = PRESENCE_PREFIX + userId + ":" + channelId;
-        redisTemplate.opsForValue().set(key, "online", PRESENCE_TTL, TimeUnit.SECONDS);
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < serverIds.size(); i++) {
+            Object count = counts.get(i);
+            result.put(serverIds.get(i), count instanceof Long ? (Long) count : 0L);
+        }
+        return result;
     }
 
-    public void setOffline(Long userId) {
-        String pattern = PRESENCE_PREFIX + userId + ":*";
-        Set<String> keys = redisTemplate.keys(pattern);
-        if (keys != null) {
-            redisTemplate.delete(keys);
+    /**
+     * Ids of online users in the server greater than {@code afterUserId}, ascending.
+     * Walks the bitmap in fixed-size chunks instead of fetching it whole.
+     */
+    public List<Long> getOnlineInServer(Long serverId, long afterUserId, int limit) {
+        byte[] key = serverKey(serverId, bucketOf(System.currentTimeMillis())).getBytes(StandardCharsets.UTF_8);
+        List<Long> userIds = new ArrayList<>(limit);
+        long first = afterUserId + 1;
+        long offset = first / 8;
+
+        while (userIds.size() < limit) {
+            long start = offset;
+            byte[] chunk = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().getRange(key, start, start + BITMAP_PAGE_BYTES - 1));
+            if (chunk == null || chunk.length == 0) {
+                break;
+            }
+            for (int i = 0; i < chunk.length && userIds.size() < limit; i++) {
+                if (chunk[i] == 0) {
+                    continue;
+                }
+                for (int bit = 0; bit < 8 && userIds.size() < limit; bit++) {
+                    long userId = (start + i) * 8 + bit;
+                    // Redis numbers bits from the most significant bit of each byte
+                    if (userId >= first && (chunk[i] & (0x80 >>> bit)) != 0) {
+                        userIds.add(userId);
+                    }
+                }
+            }
+            if (chunk.length < BITMAP_PAGE_BYTES) {
+                break;
+            }
+            offset += BITMAP_PAGE_BYTES;
         }
+        return userIds;
+    }
+
+    private static String serverKey(Long serverId, long bucket) {
+        return SERVER_PRESENCE_PREFIX + serverId + ":" + bucket;
     }
 
-    public boolean isOnline(Long userId, String channelId) {
-        String key = PRESENCE_PREFIX + userId + ":" + channelId;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+    private static long bucketOf(long millis) {
+        return millis / TimeUnit.SECONDS.toMillis(SERVER_BUCKET_SECONDS);
+    }
+
+    private static void addChannelId(Set<Long> channelIds, Object channelId) {
+        Long id = parseId(channelId);
+        if (id != null) {
+            channelIds.add(id);
+        }
+    }
+
+    private static Long parseId(Object value) {
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     public void setTyping(Long userId, String channelId) {
-        String key = TYPING_PREFIX + channelId + ":" + userId;
-        redisTemplate.opsForValue().set(key, "typing", TYPING_TTL, TimeUnit.SECONDS);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TYPING_TTL);
+        String key = CHANNEL_TYPING_PREFIX + channelId;
+
+        execute(operations -> {
+            operations.opsForZSet().add(key, userId.toString(), expiresAt);
+            operations.expire(key, TYPING_TTL, TimeUnit.SECONDS);
+            if (legacyWrites) {
+                operations.opsForValue().set(LEGACY_TYPING_PREFIX + channelId + ":" + userId,
+                    "typing", TYPING_TTL, TimeUnit.SECONDS);
+            }
+        });
     }
 
-    public Set<String> getTypingUsers(String channelId) {
-        String pattern = TYPING_PREFIX + channelId + ":*";
-        Set<String> keys = redisTemplate.keys(pattern);
-        if (keys == null || keys.isEmpty()) {
-            return Set.of();
+    public void clearTyping(Long userId, String channelId) {
+        redisTemplate.opsForZSet().remove(CHANNEL_TYPING_PREFIX + channelId, userId.toString());
+        if (legacyWrites) {
+            redisTemplate.delete(LEGACY_TYPING_PREFIX + channelId + ":" + userId);
         }
-        return keys.stream()
-            .map(key -> key.substring(key.lastIndexOf(":") + 1))
-            .collect(java.util.stream.Collectors.toSet());
     }
-}
 
+    /**
+     * Sends a group of commands in one pipelined round trip.
+     */
+    private void execute(PipelineBody body) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                body.run((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    private interface PipelineBody {
+        void run(RedisOperations<String, String> operations);
+    }
+
+    /**
+     * Net presence change for one user: optionally go offline everywhere, then
+     * be online in the given channels.
+     */
+    public record PresenceUpdate(Long userId, boolean offline, Set<String> onlineChannels) {
+    }
+}
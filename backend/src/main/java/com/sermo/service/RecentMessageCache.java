@@ -0,0 +1,455 @@
+package com.sermo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sermo.dto.MessageDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of the most recent messages per channel, each stored with
+ * its JSON encoding so recent-history reads are served without touching the
+ * database. Channels are evicted least-recently-used once the channel or byte
+ * budget is exceeded; one pass evicts down to 90% of the budget, so its sort is
+ * paid for rarely.
+ *
+ * A ring is only trusted while it sees every new message in its channel. With
+ * cluster fan-out that means this node must be listening on the channel's topic,
+ * so channels are only admitted while {@link #setTracked tracked}.
+ */
+@Component
+public class RecentMessageCache {
+
+    // Rough per-entry cost of the DTO and its strings on top of the JSON bytes
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private static final Comparator<MessageDTO> ORDER = Comparator
+        .comparing(MessageDTO::getCreatedAt)
+        .thenComparing(MessageDTO::getId);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sermo.messages.recent-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sermo.messages.recent-cache.per-channel:100}")
+    private int perChannel;
+
+    @Value("${sermo.messages.recent-cache.max-channels:10000}")
+    private int maxChannels;
+
+    @Value("${sermo.messages.recent-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private final ConcurrentHashMap<Long, Ring> rings = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    // Logical clock stamped on a ring whenever it is used, for LRU eviction
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Set<Long> tracked = ConcurrentHashMap.newKeySet();
+    private volatile boolean requireTracking;
+
+    private ObjectWriter messageWriter;
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    void init() {
+        messageWriter = objectMapper.writerFor(MessageDTO.class);
+        hits = meterRegistry.counter("sermo.messages.recent-cache.hits");
+        misses = meterRegistry.counter("sermo.messages.recent-cache.misses");
+        evictions = meterRegistry.counter("sermo.messages.recent-cache.evictions");
+        Gauge.builder("sermo.messages.recent-cache.bytes", totalBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("sermo.messages.recent-cache.channels", this, cache -> cache.channelCount()).register(meterRegistry);
+        Gauge.builder("sermo.messages.recent-cache.hit.ratio", this, cache -> cache.hitRatio()).register(meterRegistry);
+    }
+
+    public int getPerChannel() {
+        return perChannel;
+    }
+
+    /**
+     * Only admit channels marked as tracked, e.g. because other nodes may write to them.
+     */
+    public void setRequireTracking(boolean requireTracking) {
+        this.requireTracking = requireTracking;
+    }
+
+    public void setTracked(Long channelId, boolean isTracked) {
+        if (isTracked) {
+            tracked.add(channelId);
+        } else {
+            tracked.remove(channelId);
+            invalidate(channelId);
+        }
+    }
+
+    /**
+     * The cached recent messages of a channel, or null on a miss.
+     */
+    public Snapshot get(Long channelId) {
+        Ring ring = lookup(channelId);
+        Snapshot snapshot = ring != null ? ring.snapshot() : null;
+        if (snapshot != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return snapshot;
+    }
+
+    public boolean contains(Long channelId) {
+        return enabled && rings.containsKey(channelId);
+    }
+
+    /**
+     * Reserves a ring before its initial database load, so messages sent while the
+     * load is running are captured. Returns null if the channel is not admitted.
+     */
+    public Ring beginLoad(Long channelId) {
+        if (!enabled || (requireTracking && !tracked.contains(channelId))) {
+            return null;
+        }
+        Ring ring = rings.computeIfAbsent(channelId, id -> new Ring());
+        ring.touch();
+        return ring;
+    }
+
+    /**
+     * Completes a load with the newest messages from the database, oldest first.
+     */
+    public Snapshot fill(Ring ring, List<MessageDTO> messages, boolean hasOlder) {
+        Snapshot snapshot = ring.fill(messages, hasOlder);
+        evictIfNeeded();
+        return snapshot;
+    }
+
+    public void append(MessageDTO message) {
+        Ring ring = lookup(message.getChannelId());
+        if (ring != null) {
+            ring.insert(message);
+            evictIfNeeded();
+        }
+    }
+
+    public void update(MessageDTO message) {
+        Ring ring = lookup(message.getChannelId());
+        if (ring != null) {
+            ring.replace(message);
+            evictIfNeeded();
+        }
+    }
+
+    public void remove(MessageDTO message) {
+        Ring ring = lookup(message.getChannelId());
+        if (ring != null) {
+            ring.remove(message);
+        }
+    }
+
+    /**
+     * Applies a message event relayed from another node: a new message, an edit or
+     * a deletion. Edits and deletions of messages outside the ring are ignored.
+     * A new message without a sequence was broadcast before being persisted
+     * (write-behind), so the ring is dropped and reloaded once the row exists.
+     */
+    public void apply(MessageDTO message) {
+        if (message.getDeletedAt() != null) {
+            remove(message);
+        } else if (message.getEditedAt() != null) {
+            update(message);
+        } else if (message.getSeq() == null) {
+            invalidate(message.getChannelId());
+        } else {
+            append(message);
+        }
+    }
+
+    public void invalidate(Long channelId) {
+        Ring ring = rings.remove(channelId);
+        if (ring != null) {
+            ring.discard();
+        }
+    }
+
+    private Ring lookup(Long channelId) {
+        if (!enabled) {
+            return null;
+        }
+        Ring ring = rings.get(channelId);
+        if (ring != null) {
+            ring.touch();
+        }
+        return ring;
+    }
+
+    private void evictIfNeeded() {
+        if (rings.size() <= maxChannels && totalBytes.get() <= maxBytes) {
+            return;
+        }
+        // Whoever holds the lock is already evicting on everyone's behalf
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Stamps keep moving, so sort a copy taken once
+            List<Candidate> candidates = new ArrayList<>(rings.size());
+            rings.forEach((channelId, ring) -> candidates.add(new Candidate(channelId, ring, ring.lastUsed)));
+            candidates.sort(Comparator.comparingLong(Candidate::lastUsed));
+
+            long channelTarget = maxChannels - maxChannels / 10;
+            long byteTarget = maxBytes - maxBytes / 10;
+            for (Candidate candidate : candidates) {
+                if (rings.size() <= channelTarget && totalBytes.get() <= byteTarget) {
+                    break;
+                }
+                if (rings.remove(candidate.channelId(), candidate.ring())) {
+                    candidate.ring().discard();
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private int channelCount() {
+        return rings.size();
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private Entry encode(MessageDTO message) {
+        try {
+            return new Entry(message, messageWriter.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode message", e);
+        }
+    }
+
+    private record Candidate(Long channelId, Ring ring, long lastUsed) {
+    }
+
+    public record Entry(MessageDTO message, byte[] json) {
+
+        long size() {
+            return json.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * @param entries oldest first
+     * @param hasOlder whether the channel has messages older than the first entry
+     */
+    public record Snapshot(List<Entry> entries, boolean hasOlder) {
+    }
+
+    /**
+     * Fixed-capacity circular buffer ordered by (createdAt, id). Writing past
+     * capacity overwrites the oldest entry.
+     *
+     * Edits and deletions that arrive while the initial load is running are also
+     * recorded and replayed once the loaded rows are in, since the load may have
+     * read those rows before the change committed.
+     */
+    public final class Ring {
+
+        private final Entry[] slots = new Entry[perChannel];
+        // messageId -> latest edit or tombstone seen before the load completed
+        private final Map<Long, MessageDTO> pendingChanges = new HashMap<>();
+        private volatile long lastUsed;
+        private int head;
+        private int size;
+        private long bytes;
+        private boolean loaded;
+        private boolean hasOlder;
+        private boolean discarded;
+
+        private synchronized Snapshot snapshot() {
+            if (!loaded || discarded) {
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(at(i));
+            }
+            return new Snapshot(entries, hasOlder);
+        }
+
+        private synchronized Snapshot fill(List<MessageDTO> messages, boolean olderInDatabase) {
+            if (discarded) {
+                return null;
+            }
+            // Keep anything appended while the load ran; the inserts skip known ids
+            hasOlder |= olderInDatabase;
+            for (MessageDTO message : messages) {
+                insertEntry(encode(message));
+            }
+            for (MessageDTO change : pendingChanges.values()) {
+                if (change.getDeletedAt() != null) {
+                    removeEntry(change.getId());
+                } else {
+                    replaceEntry(change);
+                }
+            }
+            pendingChanges.clear();
+            loaded = true;
+            return snapshot();
+        }
+
+        private void touch() {
+            lastUsed = clock.incrementAndGet();
+        }
+
+        private synchronized void insert(MessageDTO message) {
+            if (!discarded) {
+                insertEntry(encode(message));
+            }
+        }
+
+        private synchronized void replace(MessageDTO message) {
+            if (discarded) {
+                return;
+            }
+            if (!loaded) {
+                recordPending(message);
+            }
+            replaceEntry(message);
+        }
+
+        private synchronized void remove(MessageDTO tombstone) {
+            if (discarded) {
+                return;
+            }
+            if (!loaded) {
+                recordPending(tombstone);
+            }
+            removeEntry(tombstone.getId());
+        }
+
+        private void recordPending(MessageDTO change) {
+            pendingChanges.merge(change.getId(), change,
+                (current, next) -> versionOf(next) >= versionOf(current) ? next : current);
+        }
+
+        private void replaceEntry(MessageDTO message) {
+            for (int i = 0; i < size; i++) {
+                MessageDTO current = at(i).message();
+                if (current.getId().equals(message.getId())) {
+                    // A late event must not roll back a newer version already loaded
+                    if (versionOf(message) >= versionOf(current)) {
+                        set(i, encode(message));
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void removeEntry(Long messageId) {
+            for (int i = 0; i < size; i++) {
+                if (at(i).message().getId().equals(messageId)) {
+                    adjust(-at(i).size());
+                    for (int j = i; j < size - 1; j++) {
+                        slots[index(j)] = at(j + 1);
+                    }
+                    slots[index(size - 1)] = null;
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        private synchronized void discard() {
+            if (!discarded) {
+                discarded = true;
+                totalBytes.addAndGet(-bytes);
+                bytes = 0;
+            }
+        }
+
+        private void insertEntry(Entry entry) {
+            for (int i = 0; i < size; i++) {
+                if (at(i).message().getId().equals(entry.message().getId())) {
+                    return;
+                }
+            }
+
+            // Find the insert position from the newest end; usually it is the end
+            int position = size;
+            while (position > 0 && ORDER.compare(at(position - 1).message(), entry.message()) > 0) {
+                position--;
+            }
+
+            if (size == slots.length) {
+                if (position == 0) {
+                    // Older than everything retained
+                    hasOlder = true;
+                    return;
+                }
+                dropOldest();
+                position--;
+            }
+
+            for (int i = size; i > position; i--) {
+                slots[index(i)] = at(i - 1);
+            }
+            slots[index(position)] = entry;
+            size++;
+            adjust(entry.size());
+        }
+
+        private void dropOldest() {
+            adjust(-slots[head].size());
+            slots[head] = null;
+            head = (head + 1) % slots.length;
+            size--;
+            hasOlder = true;
+        }
+
+        private void set(int i, Entry entry) {
+            adjust(entry.size() - at(i).size());
+            slots[index(i)] = entry;
+        }
+
+        private long versionOf(MessageDTO message) {
+            return message.getVersion() != null ? message.getVersion() : 0;
+        }
+
+        private void adjust(long delta) {
+            bytes += delta;
+            totalBytes.addAndGet(delta);
+        }
+
+        private Entry at(int i) {
+            return slots[index(i)];
+        }
+
+        private int index(int i) {
+            return (head + i) % slots.length;
+        }
+    }
+}
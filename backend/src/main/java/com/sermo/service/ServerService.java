@@ -1,6 +1,7 @@
 package com.sermo.service;
 
 import com.sermo.dto.ServerDTO;
+import com.sermo.dto.ServerPresenceDTO;
 import com.sermo.model.Server;
 import com.sermo.model.ServerMember;
 import com.sermo.model.User;
@@ -12,7 +13,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class ServerService {
@@ -26,6 +26,12 @@ public class ServerService {
     @Autowired
     private ServerMemberRepository serverMemberRepository;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    private static final int DEFAULT_ONLINE_PAGE_SIZE = 100;
+    private static final int MAX_ONLINE_PAGE_SIZE = 1000;
+
     @Transactional
     public ServerDTO createServer(Long ownerId, String name, String description, Boolean isPublic) {
         User owner = userRepository.findById(ownerId)
@@ -49,18 +55,18 @@ public class ServerService {
     }
 
     public List<ServerDTO> getPublicServers() {
-        return serverRepository.findByIsPublicTrue()
-            .stream()
-            .map(this::toDTO)
-            .collect(Collectors.toList());
+        return serverRepository.findPublicServerDTOs();
     }
 
     public List<ServerDTO> getUserServers(Long userId) {
-        return serverMemberRepository.findByUserId(userId)
-            .stream()
-            .map(ServerMember::getServer)
-            .map(this::toDTO)
-            .collect(Collectors.toList());
+        return serverRepository.findServerDTOsByMemberId(userId);
+    }
+
+    public ServerPresenceDTO getOnlineMembers(Long serverId, Long after, Integer limit) {
+        int size = limit == null ? DEFAULT_ONLINE_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_ONLINE_PAGE_SIZE));
+        List<Long> userIds = presenceService.getOnlineInServer(serverId, after != null ? after : -1, size);
+        Long nextCursor = userIds.size() == size ? userIds.get(userIds.size() - 1) : null;
+        return new ServerPresenceDTO(serverId, presenceService.countOnlineInServer(serverId), userIds, nextCursor);
     }
 
     @Transactional
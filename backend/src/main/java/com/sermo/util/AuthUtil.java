@@ -1,32 +1,22 @@
 package com.sermo.util;
 
-import com.sermo.repository.UserRepository;
-import com.sermo.model.User;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.sermo.security.JwtPrincipal;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 @Component
 public class AuthUtil {
 
-    @Autowired
-    private UserRepository userRepository;
-
     public Long getUserId(Authentication authentication) {
         if (authentication == null || authentication.getPrincipal() == null) {
             return null;
         }
 
-        if (authentication.getPrincipal() instanceof UserDetails) {
-            UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-            String username = userDetails.getUsername();
-            User user = userRepository.findByUsername(username)
-                .orElse(null);
-            return user != null ? user.getId() : null;
+        // The JWT filter already put the user id on the principal
+        if (authentication.getPrincipal() instanceof JwtPrincipal) {
+            return ((JwtPrincipal) authentication.getPrincipal()).userId();
         }
 
         return null;
     }
 }
-
@@ -0,0 +1,15 @@
+package com.sermo.util;
+
+/**
+ * Canonical id of the conversation between two users, independent of who sent
+ * what: "{lowerUserId}:{higherUserId}".
+ */
+public final class ConversationKey {
+
+    private ConversationKey() {
+    }
+
+    public static String of(Long userA, Long userB) {
+        return Math.min(userA, userB) + ":" + Math.max(userA, userB);
+    }
+}
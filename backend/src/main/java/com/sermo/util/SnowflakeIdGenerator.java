@@ -0,0 +1,114 @@
+package com.sermo.util;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free, time-ordered 64-bit id generator.
+ *
+ * <pre>
+ * | 1 bit unused | 41 bits ms since 2024-01-01 | 10 bits node id | 12 bits sequence |
+ * </pre>
+ *
+ * Ids from one node are strictly increasing. If the wall clock moves backwards, or
+ * a millisecond's 4096 sequence values run out, the generator keeps counting from
+ * its last timestamp instead of waiting, so it never blocks or repeats an id.
+ *
+ * Uniqueness across replicas rests on the node id, so it must be configured
+ * explicitly; the application refuses to start without one.
+ */
+@Component
+public class SnowflakeIdGenerator {
+
+    public static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static volatile SnowflakeIdGenerator shared;
+
+    @Value("${sermo.id.node-id:-1}")
+    private long configuredNodeId;
+
+    private long nodeId;
+
+    // (timestamp << SEQUENCE_BITS) | sequence of the last issued id
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator() {
+    }
+
+    public SnowflakeIdGenerator(long nodeId) {
+        this.configuredNodeId = nodeId;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        // A guessed node id could collide with another replica's and silently duplicate ids
+        if (configuredNodeId < 0 || configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalStateException(
+                "sermo.id.node-id (NODE_ID) must be set to a value between 0 and " + MAX_NODE_ID + ", unique per replica");
+        }
+        nodeId = configuredNodeId;
+        shared = this;
+    }
+
+    /**
+     * The application's generator, for callers Spring does not manage (e.g. Hibernate id generators).
+     */
+    public static SnowflakeIdGenerator shared() {
+        SnowflakeIdGenerator generator = shared;
+        if (generator == null) {
+            throw new IllegalStateException("SnowflakeIdGenerator has not been initialized");
+        }
+        return generator;
+    }
+
+    public long nextId() {
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH;
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                // Same millisecond, or the clock went backwards: keep the last timestamp
+                next = last + 1;
+            } else {
+                // Sequence exhausted: borrow the next millisecond
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            }
+
+            if (state.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Epoch milliseconds encoded in an id, e.g. to turn a timestamp into a pagination cursor.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * Smallest id that could be issued at the given epoch millisecond.
+     */
+    public static long minIdAt(long epochMillis) {
+        return (epochMillis - EPOCH) << (NODE_BITS + SEQUENCE_BITS);
+    }
+}
@@ -0,0 +1,94 @@
+package com.sermo.config;
+
+import com.sermo.model.DMKey;
+import com.sermo.repository.DMKeyRepository;
+import com.sermo.repository.JpaTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(ConversationKeyBackfill.class)
+@TestPropertySource(properties = "sermo.migrations.batch-size=1")
+class ConversationKeyBackfillTest extends JpaTestSupport {
+
+    @Autowired
+    private ConversationKeyBackfill backfill;
+
+    @Autowired
+    private DMKeyRepository dmKeyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long a;
+    private Long b;
+    private Long c;
+    private Long d;
+
+    @BeforeEach
+    void setUp() {
+        // Ids are assigned in order, so each user has a higher id than the one before
+        a = user("a").getId();
+        b = user("b").getId();
+        c = user("c").getId();
+        d = user("d").getId();
+        entityManager.flush();
+    }
+
+    @Test
+    void keepsTheCanonicalRowOfAMirroredPairAndSwapsTheRest() {
+        insert(a, b, "a-of-ab", "b-of-ab");
+        insert(b, a, "b-of-ba", "a-of-ba");
+        insert(d, c, "d", "c");
+
+        backfill.canonicalizeDMKeys();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT user1_id, user2_id, encrypted_key_user1, encrypted_key_user2 FROM dm_keys ORDER BY user1_id");
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsEntry("USER1_ID", a).containsEntry("USER2_ID", b)
+            .containsEntry("ENCRYPTED_KEY_USER1", "a-of-ab").containsEntry("ENCRYPTED_KEY_USER2", "b-of-ab");
+        assertThat(rows.get(1)).containsEntry("USER1_ID", c).containsEntry("USER2_ID", d)
+            .containsEntry("ENCRYPTED_KEY_USER1", "c").containsEntry("ENCRYPTED_KEY_USER2", "d");
+    }
+
+    @Test
+    void canonicalRowsCanBeUpdatedAfterwards() {
+        insert(a, b, "a", "b");
+        insert(b, a, "b", "a");
+        backfill.canonicalizeDMKeys();
+
+        DMKey key = dmKeyRepository.findByUser1IdAndUser2Id(a, b).orElseThrow();
+        key.setEncryptedKeyUser1("rotated");
+        dmKeyRepository.saveAndFlush(key);
+        entityManager.clear();
+
+        assertThat(dmKeyRepository.findByUser1IdAndUser2Id(a, b).orElseThrow().getEncryptedKeyUser1()).isEqualTo("rotated");
+        assertThat(dmKeyRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void isANoOpOnceEveryRowIsCanonical() {
+        insert(a, b, "a", "b");
+
+        backfill.canonicalizeDMKeys();
+        backfill.canonicalizeDMKeys();
+
+        assertThat(dmKeyRepository.findByUser1IdAndUser2Id(a, b)).isPresent();
+        assertThat(dmKeyRepository.count()).isEqualTo(1);
+    }
+
+    // Written straight to the table, as code before the canonical order did
+    private void insert(Long user1, Long user2, String keyUser1, String keyUser2) {
+        jdbcTemplate.update("INSERT INTO dm_keys (user1_id, user2_id, encrypted_key_user1, encrypted_key_user2) " +
+                            "VALUES (?, ?, ?, ?)", user1, user2, keyUser1, keyUser2);
+    }
+}
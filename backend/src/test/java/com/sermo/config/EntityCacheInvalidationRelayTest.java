@@ -0,0 +1,169 @@
+package com.sermo.config;
+
+import com.sermo.dto.ServerDTO;
+import com.sermo.model.Server;
+import com.sermo.model.User;
+import com.sermo.repository.JpaTestSupport;
+import com.sermo.repository.ServerRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * This context plays one node. Another node's write is a direct update of the
+ * table, which this node's Hibernate never sees, followed by the relay message
+ * that node would publish; Redis itself is mocked.
+ */
+@Import(EntityCacheInvalidationRelay.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EntityCacheInvalidationRelayTest extends JpaTestSupport {
+
+    private static final String TOPIC = "sermo:cache:invalidate";
+
+    @MockBean
+    private RedisTemplate<String, String> redisTemplate;
+
+    @MockBean
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private EntityCacheInvalidationRelay relay;
+
+    @Autowired
+    private ServerRepository serverRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long serverId;
+
+    @BeforeEach
+    void setUp() {
+        serverId = transactionTemplate.execute(status -> {
+            User owner = user("owner" + System.nanoTime());
+            Server server = server("before", owner);
+            server.setIsPublic(true);
+            return server.getId();
+        });
+        clearInvocations(redisTemplate);
+    }
+
+    @Test
+    void anotherNodesWriteEvictsTheCachedEntity() {
+        assertThat(name()).isEqualTo("before");
+        assertThat(cache().containsEntity(Server.class, serverId)).isTrue();
+
+        jdbcTemplate.update("UPDATE servers SET name = 'after' WHERE id = ?", serverId);
+        // Without the relay this node keeps serving its copy
+        assertThat(name()).isEqualTo("before");
+
+        relay.onMessage(fromOtherNode(Server.class, serverId), null);
+
+        assertThat(cache().containsEntity(Server.class, serverId)).isFalse();
+        assertThat(name()).isEqualTo("after");
+    }
+
+    @Test
+    void anotherNodesWriteDropsCachedQueriesOverTheTable() {
+        assertThat(publicServerIds()).contains(serverId);
+
+        jdbcTemplate.update("UPDATE servers SET is_public = false WHERE id = ?", serverId);
+        assertThat(publicServerIds()).contains(serverId);
+
+        relay.onMessage(fromOtherNode(Server.class, serverId), null);
+
+        assertThat(publicServerIds()).doesNotContain(serverId);
+    }
+
+    @Test
+    void committedWritesArePublishedForTheOtherNodes() {
+        transactionTemplate.executeWithoutResult(status ->
+            serverRepository.findById(serverId).orElseThrow().setName("renamed"));
+
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(TOPIC), payload.capture());
+        String[] parts = payload.getValue().split(" ");
+        assertThat(parts).hasSize(3);
+        assertThat(parts[1]).isEqualTo(Server.class.getName());
+        assertThat(parts[2]).isEqualTo(serverId.toString());
+
+        // The node that wrote already has the new state and ignores its own message
+        assertThat(name()).isEqualTo("renamed");
+        relay.onMessage(message(payload.getValue()), null);
+        assertThat(cache().containsEntity(Server.class, serverId)).isTrue();
+    }
+
+    @Test
+    void rolledBackWritesAreNotPublished() {
+        transactionTemplate.executeWithoutResult(status -> {
+            serverRepository.findById(serverId).orElseThrow().setName("never");
+            serverRepository.flush();
+            status.setRollbackOnly();
+        });
+
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+        assertThat(name()).isEqualTo("before");
+    }
+
+    @Test
+    void malformedMessagesAreIgnored() {
+        assertThat(name()).isEqualTo("before");
+
+        relay.onMessage(message("other-node " + Server.class.getName()), null);
+        relay.onMessage(message("other-node com.sermo.model.Unknown 1"), null);
+
+        assertThat(cache().containsEntity(Server.class, serverId)).isTrue();
+    }
+
+    private String name() {
+        return transactionTemplate.execute(status -> serverRepository.findById(serverId).orElseThrow().getName());
+    }
+
+    private List<Long> publicServerIds() {
+        return transactionTemplate.execute(status -> serverRepository.findPublicServerDTOs().stream()
+            .map(ServerDTO::getId)
+            .collect(Collectors.toList()));
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    private static DefaultMessage fromOtherNode(Class<?> entity, Long id) {
+        return message("other-node " + entity.getName() + " " + id);
+    }
+
+    private static DefaultMessage message(String payload) {
+        return new DefaultMessage(TOPIC.getBytes(StandardCharsets.UTF_8), payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,55 @@
+package com.sermo.config;
+
+import com.sermo.security.JwtAuthenticationFilter;
+import com.sermo.security.JwtPrincipal;
+import com.sermo.util.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Only the security chain is under test; no controller is loaded, so a request
+ * that gets through is answered with 404.
+ */
+@WebMvcTest(controllers = SecurityConfigTest.class)
+@Import({SecurityConfig.class, JwtAuthenticationFilter.class})
+class SecurityConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JwtUtil jwtUtil;
+
+    @MockBean
+    private UserDetailsService userDetailsService;
+
+    @Test
+    void metricsRequireAToken() throws Exception {
+        mockMvc.perform(get("/actuator/metrics")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer forged"))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void metricsAreServedWithAValidToken() throws Exception {
+        when(jwtUtil.verify("valid")).thenReturn(new JwtPrincipal(1L, "alice"));
+
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer valid"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void healthAndTheApiStayOpen() throws Exception {
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/servers/public")).andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,75 @@
+package com.sermo.handler;
+
+import com.sermo.dto.MessageDTO;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryFrameCodecTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    @Test
+    void encodesMessagesWithRawCiphertext() {
+        byte[] nonce = {1, 2, 3};
+        byte[] ciphertext = {9, 8, 7, 6};
+        MessageDTO message = new MessageDTO(42L, 1L, "alice", 10L,
+            Base64.getEncoder().encodeToString(ciphertext), Base64.getEncoder().encodeToString(nonce),
+            CREATED_AT, null, 7L, 7L, null);
+
+        ByteBuffer buffer = ByteBuffer.wrap(BinaryFrameCodec.encodeMessage(message));
+
+        assertThat(buffer.get()).isEqualTo(BinaryFrameCodec.MESSAGE);
+        assertThat(buffer.getLong()).isEqualTo(42L);
+        assertThat(buffer.getLong()).isEqualTo(10L);
+        assertThat(buffer.getLong()).isEqualTo(1L);
+        assertThat(buffer.getLong()).isEqualTo(CREATED_AT.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertThat(buffer.getLong()).isZero();
+        byte[] username = new byte[buffer.getShort()];
+        buffer.get(username);
+        assertThat(new String(username, StandardCharsets.UTF_8)).isEqualTo("alice");
+        assertThat(BinaryFrameCodec.readShortField(buffer)).isEqualTo(message.getNonce());
+        assertThat(BinaryFrameCodec.readLongField(buffer)).isEqualTo(message.getEncryptedContent());
+        assertThat(buffer.getLong()).isEqualTo(7L);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void encodesTypingFrames() {
+        ByteBuffer buffer = ByteBuffer.wrap(BinaryFrameCodec.encodeTyping(BinaryFrameCodec.TYPING_STOP, 10L, 1L));
+
+        assertThat(buffer.get()).isEqualTo(BinaryFrameCodec.TYPING_STOP);
+        assertThat(buffer.getLong()).isEqualTo(10L);
+        assertThat(buffer.getLong()).isEqualTo(1L);
+    }
+
+    @Test
+    void readsResumePairsInOrder() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 16 * 2)
+            .putShort((short) 2)
+            .putLong(10L).putLong(5L)
+            .putLong(11L).putLong(0L)
+            .flip();
+
+        Map<Long, Long> lastSeen = BinaryFrameCodec.readResume(buffer);
+
+        assertThat(lastSeen).containsExactly(Map.entry(10L, 5L), Map.entry(11L, 0L));
+    }
+
+    @Test
+    void rejectsFieldsLongerThanTheFrame() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2).putInt(100).put(new byte[] {1, 2}).flip();
+
+        assertThatThrownBy(() -> BinaryFrameCodec.readLongField(buffer))
+            .isInstanceOf(BufferUnderflowException.class);
+    }
+}
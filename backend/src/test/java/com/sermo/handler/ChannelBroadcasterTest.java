@@ -0,0 +1,166 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.MessageDTO;
+import com.sermo.service.RecentMessageCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChannelBroadcasterTest {
+
+    private ChannelBroadcaster broadcaster;
+    private FrameEncoder frameEncoder;
+    private SessionRegistry sessionRegistry;
+    private RedisTemplate<String, String> redisTemplate;
+    private RedisMessageListenerContainer listenerContainer;
+    private RecentMessageCache recentMessageCache;
+    private OutboundQueue subscriber;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        frameEncoder = new FrameEncoder();
+        ReflectionTestUtils.setField(frameEncoder, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        frameEncoder.init();
+
+        sessionRegistry = mock(SessionRegistry.class);
+        redisTemplate = mock(RedisTemplate.class);
+        listenerContainer = mock(RedisMessageListenerContainer.class);
+        recentMessageCache = mock(RecentMessageCache.class);
+        subscriber = mock(OutboundQueue.class);
+        when(sessionRegistry.getSubscribers(10L)).thenReturn(List.of(subscriber));
+
+        broadcaster = new ChannelBroadcaster();
+        ReflectionTestUtils.setField(broadcaster, "sessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(broadcaster, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(broadcaster, "listenerContainer", listenerContainer);
+        ReflectionTestUtils.setField(broadcaster, "frameEncoder", frameEncoder);
+        ReflectionTestUtils.setField(broadcaster, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(broadcaster, "recentMessageCache", recentMessageCache);
+        ReflectionTestUtils.setField(broadcaster, "clusterFanout", true);
+        broadcaster.init();
+    }
+
+    @Test
+    void deliversLocallyAndPublishesOnce() throws Exception {
+        OutboundFrame frame = frameEncoder.encode("MESSAGE", message());
+
+        broadcaster.broadcast(10L, frame);
+
+        verify(subscriber).offer(frame);
+        byte[] payload = publishedPayload();
+        String body = new String(payload, StandardCharsets.UTF_8);
+        assertThat(body.substring(body.indexOf('\n') + 1)).isEqualTo(new String(frame.getText().asBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void sendsToEveryLocalSessionOfTheUserAndPublishesOnTheirTopic() throws Exception {
+        OutboundQueue phone = mock(OutboundQueue.class);
+        OutboundQueue laptop = mock(OutboundQueue.class);
+        when(sessionRegistry.getUserSessions(2L)).thenReturn(List.of(phone, laptop));
+        OutboundFrame frame = frameEncoder.encode("DM", Map.of("id", 99));
+
+        broadcaster.sendToUser(2L, frame);
+
+        verify(phone).offer(frame);
+        verify(laptop).offer(frame);
+        verify(subscriber, never()).offer(any(OutboundFrame.class));
+        assertThat(publishedTopic()).isEqualTo("chat:user:2");
+    }
+
+    @Test
+    void deliversEventsRelayedFromOtherNodes() throws Exception {
+        when(recentMessageCache.contains(10L)).thenReturn(true);
+        byte[] json = frameEncoder.encode("MESSAGE", message()).getText().asBytes();
+
+        broadcaster.onMessage(relayed("other-node", json), null);
+
+        ArgumentCaptor<OutboundFrame> delivered = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(subscriber).offer(delivered.capture());
+        assertThat(delivered.getValue().getText().asBytes()).isEqualTo(json);
+        verify(recentMessageCache).apply(message());
+    }
+
+    @Test
+    void ignoresItsOwnRelayedEvents() throws Exception {
+        byte[] json = frameEncoder.encode("MESSAGE", message()).getText().asBytes();
+        String nodeId = (String) ReflectionTestUtils.getField(broadcaster, "nodeId");
+
+        broadcaster.onMessage(relayed(nodeId, json), null);
+
+        verify(subscriber, never()).offer(any(OutboundFrame.class));
+    }
+
+    @Test
+    void listensOnAChannelTopicOnlyWhileItHasLocalSubscribers() {
+        when(sessionRegistry.hasSubscribers(10L)).thenReturn(true);
+        broadcaster.onChannelActivityChanged(10L);
+
+        verify(listenerContainer).addMessageListener(broadcaster, new ChannelTopic("chat:channel:10"));
+        verify(recentMessageCache).setTracked(10L, true);
+
+        when(sessionRegistry.hasSubscribers(10L)).thenReturn(false);
+        broadcaster.onChannelActivityChanged(10L);
+
+        verify(listenerContainer).removeMessageListener(broadcaster, new ChannelTopic("chat:channel:10"));
+        verify(recentMessageCache).setTracked(10L, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] publishedPayload() {
+        ArgumentCaptor<RedisCallback<Long>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate).execute(callback.capture());
+
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).publish(any(byte[].class), payload.capture());
+        return payload.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private String publishedTopic() {
+        ArgumentCaptor<RedisCallback<Long>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate).execute(callback.capture());
+
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        ArgumentCaptor<byte[]> topic = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).publish(topic.capture(), any(byte[].class));
+        return new String(topic.getValue(), StandardCharsets.UTF_8);
+    }
+
+    private static DefaultMessage relayed(String nodeId, byte[] json) {
+        byte[] header = (nodeId + " " + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[header.length + json.length];
+        System.arraycopy(header, 0, body, 0, header.length);
+        System.arraycopy(json, 0, body, header.length, json.length);
+        return new DefaultMessage("chat:channel:10".getBytes(StandardCharsets.UTF_8), body);
+    }
+
+    private static MessageDTO message() {
+        return new MessageDTO(42L, 1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=",
+            LocalDateTime.of(2026, 1, 1, 12, 0), null, 7L, 7L, null);
+    }
+}
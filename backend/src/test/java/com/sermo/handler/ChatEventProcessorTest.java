@@ -0,0 +1,293 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.BootstrapDTO;
+import com.sermo.dto.ChannelDTO;
+import com.sermo.dto.MessageDTO;
+import com.sermo.dto.ServerDTO;
+import com.sermo.security.JwtPrincipal;
+import com.sermo.service.BootstrapService;
+import com.sermo.service.DirectMessageService;
+import com.sermo.service.MessageChangedEvent;
+import com.sermo.service.MessageIngestPipeline;
+import com.sermo.service.MessageService;
+import com.sermo.service.PresenceBatcher;
+import com.sermo.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatEventProcessorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private ChatEventProcessor processor;
+    private MessageService messageService;
+    private MessageIngestPipeline pipeline;
+    private SessionRegistry sessionRegistry;
+    private ChannelBroadcaster channelBroadcaster;
+    private OutboundQueue outbound;
+    private WebSocketSession session;
+    private BootstrapService bootstrapService;
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        FrameEncoder frameEncoder = new FrameEncoder();
+        ReflectionTestUtils.setField(frameEncoder, "objectMapper", objectMapper);
+        frameEncoder.init();
+
+        pipeline = mock(MessageIngestPipeline.class);
+        when(pipeline.isEnabled()).thenReturn(true);
+        channelBroadcaster = mock(ChannelBroadcaster.class);
+        outbound = mock(OutboundQueue.class);
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        messageService = mock(MessageService.class);
+        sessionRegistry = mock(SessionRegistry.class);
+        bootstrapService = mock(BootstrapService.class);
+        jwtUtil = mock(JwtUtil.class);
+        when(jwtUtil.verify("valid")).thenReturn(new JwtPrincipal(1L, "alice"));
+        when(sessionRegistry.getOutbound("s1")).thenReturn(outbound);
+        when(sessionRegistry.getUsername("s1")).thenReturn("alice");
+
+        processor = new ChatEventProcessor();
+        ReflectionTestUtils.setField(processor, "messageService", messageService);
+        ReflectionTestUtils.setField(processor, "messageIngestPipeline", pipeline);
+        ReflectionTestUtils.setField(processor, "directMessageService", mock(DirectMessageService.class));
+        ReflectionTestUtils.setField(processor, "presenceBatcher", mock(PresenceBatcher.class));
+        ReflectionTestUtils.setField(processor, "bootstrapService", bootstrapService);
+        ReflectionTestUtils.setField(processor, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(processor, "sessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(processor, "frameEncoder", frameEncoder);
+        ReflectionTestUtils.setField(processor, "channelBroadcaster", channelBroadcaster);
+        ReflectionTestUtils.setField(processor, "typingTracker", mock(TypingTracker.class));
+        ReflectionTestUtils.setField(processor, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(processor, "maxReplay", 500);
+        processor.init();
+    }
+
+    @Test
+    void connectingSendsReadyWithEverythingTheClientStartsWith() throws Exception {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 1, 1, 12, 0);
+        when(bootstrapService.getBootstrap(1L, "alice")).thenReturn(new BootstrapDTO(1L, "alice",
+            List.of(new ServerDTO(100L, "sermo", null, true, 1L, createdAt)),
+            List.of(new ChannelDTO(10L, "general", null, 100L, false, createdAt)),
+            Map.of(10L, "ZW5jcnlwdGVkIGtleQ=="),
+            Map.of(100L, 3L)));
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/chat?token=valid"));
+
+        processor.connect(session, false);
+
+        verify(sessionRegistry).register(session, 1L, "alice", false, false);
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(outbound).offer(frame.capture());
+        JsonNode ready = read(frame.getValue());
+        assertThat(ready.get("type").asText()).isEqualTo("READY");
+        JsonNode payload = ready.get("payload");
+        assertThat(payload.get("userId").asLong()).isEqualTo(1L);
+        assertThat(payload.get("username").asText()).isEqualTo("alice");
+        assertThat(payload.get("servers").get(0).get("id").asLong()).isEqualTo(100L);
+        assertThat(payload.get("channels").get(0).get("serverId").asLong()).isEqualTo(100L);
+        assertThat(payload.get("keys").get("10").asText()).isEqualTo("ZW5jcnlwdGVkIGtleQ==");
+        assertThat(payload.get("online").get("100").asLong()).isEqualTo(3L);
+    }
+
+    @Test
+    void reconnectsThatResumeSkipReady() throws Exception {
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/chat?token=valid&ready=false"));
+
+        processor.connect(session, false);
+
+        verify(sessionRegistry).register(session, 1L, "alice", false, false);
+        verify(bootstrapService, never()).getBootstrap(any(), any());
+        verify(outbound, never()).offer(any(OutboundFrame.class));
+    }
+
+    @Test
+    void aFailedBootstrapIsReportedInsteadOfReady() throws Exception {
+        when(bootstrapService.getBootstrap(1L, "alice")).thenThrow(new RuntimeException("Database unavailable"));
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/chat?token=valid"));
+
+        processor.connect(session, false);
+
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(outbound).offer(frame.capture());
+        assertThat(read(frame.getValue()).get("type").asText()).isEqualTo("ERROR");
+        assertThat(read(frame.getValue()).get("payload").get("code").asText()).isEqualTo("READY_FAILED");
+    }
+
+    @Test
+    void anInvalidTokenClosesTheSessionWithoutReady() throws Exception {
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/chat?token=forged"));
+
+        processor.connect(session, false);
+
+        verify(session).close(CloseStatus.BAD_DATA);
+        verify(sessionRegistry, never()).register(any(), any(), any(), anyBoolean(), anyBoolean());
+        verify(bootstrapService, never()).getBootstrap(any(), any());
+    }
+
+    @Test
+    void writeBehindBroadcastsOnAcceptByDefault() throws Exception {
+        MessageIngestPipeline.PendingMessage pending = pending();
+        when(pipeline.accept(1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=")).thenReturn(pending);
+
+        processor.sendMessage(session, 1L, 10L, "Y2lwaGVy", "bm9uY2U=");
+
+        assertThat(broadcastIds()).containsExactly(42L);
+        pending.flushed().complete(pending.message());
+        verify(channelBroadcaster).broadcast(eq(10L), any(OutboundFrame.class));
+        verify(outbound, never()).offer(any(OutboundFrame.class));
+    }
+
+    @Test
+    void ackAfterFlushBroadcastsOnlyOnceThePersistedMessageIsBack() throws Exception {
+        when(pipeline.isAckAfterFlush()).thenReturn(true);
+        MessageIngestPipeline.PendingMessage pending = pending();
+        when(pipeline.accept(1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=")).thenReturn(pending);
+
+        processor.sendMessage(session, 1L, 10L, "Y2lwaGVy", "bm9uY2U=");
+        verify(channelBroadcaster, never()).broadcast(any(), any());
+
+        pending.message().setSeq(7L);
+        pending.flushed().complete(pending.message());
+
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(channelBroadcaster).broadcast(eq(10L), frame.capture());
+        assertThat(read(frame.getValue()).get("payload").get("seq").asLong()).isEqualTo(7L);
+    }
+
+    @Test
+    void tellsTheSenderWhenTheFlushFails() throws Exception {
+        MessageIngestPipeline.PendingMessage pending = pending();
+        when(pipeline.accept(1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=")).thenReturn(pending);
+
+        processor.sendMessage(session, 1L, 10L, "Y2lwaGVy", "bm9uY2U=");
+        pending.flushed().completeExceptionally(new RuntimeException("Channel not found"));
+
+        assertMessageNotSaved();
+    }
+
+    @Test
+    void tellsTheSenderWhenTheMessageIsRejected() throws Exception {
+        when(pipeline.accept(1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U="))
+            .thenThrow(new RuntimeException("Message queue is full"));
+
+        processor.sendMessage(session, 1L, 10L, "Y2lwaGVy", "bm9uY2U=");
+
+        assertMessageNotSaved();
+        verify(channelBroadcaster, never()).broadcast(any(), any());
+    }
+
+    @Test
+    void broadcastsCommittedDeletionsAsTombstones() throws Exception {
+        MessageDTO deleted = message(8L);
+        deleted.setDeletedAt(LocalDateTime.of(2026, 1, 1, 13, 0));
+
+        processor.onMessageChanged(new MessageChangedEvent(deleted));
+
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(channelBroadcaster).broadcast(eq(10L), frame.capture());
+        JsonNode change = read(frame.getValue());
+        assertThat(change.get("type").asText()).isEqualTo("MESSAGE_CHANGE");
+        assertThat(change.get("payload").get("type").asText()).isEqualTo("DELETE");
+        assertThat(change.get("payload").get("message").get("encryptedContent").isNull()).isTrue();
+    }
+
+    @Test
+    void resumeSubscribesBeforeReplayingWhatWasMissed() throws Exception {
+        when(messageService.getMessagesSince(10L, 7L, 500)).thenReturn(List.of(message(8L), message(9L)));
+
+        processor.resume(session, Map.of(10L, 7L));
+
+        InOrder order = inOrder(sessionRegistry, messageService);
+        order.verify(sessionRegistry).subscribe("s1", 10L);
+        order.verify(messageService).getMessagesSince(10L, 7L, 500);
+        assertThat(offered()).extracting(frame -> frame.get("payload").get("seq").asLong()).containsExactly(8L, 9L);
+    }
+
+    @Test
+    void resumeAsksForAResyncOnceTheReplayBudgetIsSpent() throws Exception {
+        ReflectionTestUtils.setField(processor, "maxReplay", 3);
+        when(messageService.getMessagesSince(10L, 7L, 3)).thenReturn(List.of(message(8L), message(9L)));
+        // The second channel only gets what the first left of the budget
+        when(messageService.getMessagesSince(20L, 4L, 1)).thenReturn(null);
+        Map<Long, Long> lastSeen = new LinkedHashMap<>();
+        lastSeen.put(10L, 7L);
+        lastSeen.put(20L, 4L);
+
+        processor.resume(session, lastSeen);
+
+        List<JsonNode> frames = offered();
+        assertThat(frames).extracting(frame -> frame.get("type").asText()).containsExactly("MESSAGE", "MESSAGE", "RESYNC");
+        assertThat(frames.get(2).get("payload").get("channelId").asLong()).isEqualTo(20L);
+        verify(sessionRegistry).subscribe("s1", 20L);
+    }
+
+    private List<JsonNode> offered() throws Exception {
+        ArgumentCaptor<OutboundFrame> frames = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(outbound, atLeastOnce()).offer(frames.capture());
+        List<JsonNode> nodes = new ArrayList<>();
+        for (OutboundFrame frame : frames.getAllValues()) {
+            nodes.add(read(frame));
+        }
+        return nodes;
+    }
+
+    private void assertMessageNotSaved() throws Exception {
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(outbound).offer(frame.capture());
+        JsonNode error = read(frame.getValue());
+        assertThat(error.get("type").asText()).isEqualTo("ERROR");
+        assertThat(error.get("payload").get("code").asText()).isEqualTo("MESSAGE_NOT_SAVED");
+        assertThat(error.get("payload").get("channelId").asLong()).isEqualTo(10L);
+        assertThat(error.get("payload").get("nonce").asText()).isEqualTo("bm9uY2U=");
+    }
+
+    private List<Long> broadcastIds() throws Exception {
+        ArgumentCaptor<OutboundFrame> frame = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(channelBroadcaster).broadcast(eq(10L), frame.capture());
+        return List.of(read(frame.getValue()).get("payload").get("id").asLong());
+    }
+
+    private JsonNode read(OutboundFrame frame) throws Exception {
+        return objectMapper.readTree(frame.getText().asBytes());
+    }
+
+    private static MessageDTO message(long seq) {
+        return new MessageDTO(seq, 1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=",
+            LocalDateTime.of(2026, 1, 1, 12, 0), null, seq, seq, null);
+    }
+
+    private static MessageIngestPipeline.PendingMessage pending() {
+        MessageDTO message = new MessageDTO(42L, 1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=",
+            LocalDateTime.of(2026, 1, 1, 12, 0), null, null, null, null);
+        return new MessageIngestPipeline.PendingMessage(message, new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,175 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.DirectMessageDTO;
+import com.sermo.service.BootstrapService;
+import com.sermo.service.DirectMessageService;
+import com.sermo.service.MessageIngestPipeline;
+import com.sermo.service.MessageService;
+import com.sermo.service.PresenceBatcher;
+import com.sermo.service.RecentMessageCache;
+import com.sermo.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Direct messages routed through the real session index and outbound queues,
+ * on a single node.
+ */
+class DirectMessageDeliveryTest {
+
+    private static final Long ALICE = 1L;
+    private static final Long BOB = 2L;
+    private static final Long CAROL = 3L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private ChatEventProcessor processor;
+    private DirectMessageService directMessageService;
+    private SessionRegistry sessionRegistry;
+    private final Map<String, WebSocketSession> sessions = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        FrameEncoder frameEncoder = new FrameEncoder();
+        ReflectionTestUtils.setField(frameEncoder, "objectMapper", objectMapper);
+        frameEncoder.init();
+
+        sessionRegistry = new SessionRegistry();
+        ReflectionTestUtils.setField(sessionRegistry, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(sessionRegistry, "writerThreads", 1);
+        ReflectionTestUtils.setField(sessionRegistry, "maxQueuedMessages", 100);
+        ReflectionTestUtils.setField(sessionRegistry, "bufferSizeLimit", 1L << 20);
+        ReflectionTestUtils.setField(sessionRegistry, "sendTimeLimit", 10_000L);
+        ReflectionTestUtils.setField(sessionRegistry, "coalescingWindow", 20L);
+        ReflectionTestUtils.setField(sessionRegistry, "coalescingRateThreshold", 50);
+        ReflectionTestUtils.setField(sessionRegistry, "coalescingMaxBatchBytes", 65536);
+        sessionRegistry.init();
+
+        ChannelBroadcaster channelBroadcaster = new ChannelBroadcaster();
+        ReflectionTestUtils.setField(channelBroadcaster, "sessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(channelBroadcaster, "redisTemplate", mock(RedisTemplate.class));
+        ReflectionTestUtils.setField(channelBroadcaster, "listenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(channelBroadcaster, "frameEncoder", frameEncoder);
+        ReflectionTestUtils.setField(channelBroadcaster, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(channelBroadcaster, "recentMessageCache", mock(RecentMessageCache.class));
+        ReflectionTestUtils.setField(channelBroadcaster, "clusterFanout", false);
+        channelBroadcaster.init();
+
+        directMessageService = mock(DirectMessageService.class);
+        when(directMessageService.sendDirectMessage(any(), any(), any(), any())).thenAnswer(invocation ->
+            new DirectMessageDTO(99L, invocation.getArgument(0), "user" + invocation.getArgument(0),
+                invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3),
+                LocalDateTime.of(2026, 1, 1, 12, 0), null));
+
+        processor = new ChatEventProcessor();
+        ReflectionTestUtils.setField(processor, "messageService", mock(MessageService.class));
+        ReflectionTestUtils.setField(processor, "messageIngestPipeline", mock(MessageIngestPipeline.class));
+        ReflectionTestUtils.setField(processor, "directMessageService", directMessageService);
+        ReflectionTestUtils.setField(processor, "presenceBatcher", mock(PresenceBatcher.class));
+        ReflectionTestUtils.setField(processor, "bootstrapService", mock(BootstrapService.class));
+        ReflectionTestUtils.setField(processor, "jwtUtil", mock(JwtUtil.class));
+        ReflectionTestUtils.setField(processor, "sessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(processor, "frameEncoder", frameEncoder);
+        ReflectionTestUtils.setField(processor, "channelBroadcaster", channelBroadcaster);
+        ReflectionTestUtils.setField(processor, "typingTracker", mock(TypingTracker.class));
+        ReflectionTestUtils.setField(processor, "meterRegistry", new SimpleMeterRegistry());
+        processor.init();
+
+        register("alice-phone", ALICE);
+        register("alice-laptop", ALICE);
+        register("bob-phone", BOB);
+        register("carol-phone", CAROL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionRegistry.shutdown();
+    }
+
+    @Test
+    void reachesEverySessionOfBothParticipantsAndNobodyElse() throws Exception {
+        processor.sendDirectMessage(sessions.get("alice-phone"), ALICE, BOB, "Y2lwaGVy", "bm9uY2U=");
+
+        for (String sessionId : new String[]{"alice-phone", "alice-laptop", "bob-phone"}) {
+            JsonNode frame = received(sessionId);
+            assertThat(frame.get("type").asText()).isEqualTo("DM");
+            assertThat(frame.get("payload").get("senderId").asLong()).isEqualTo(ALICE);
+            assertThat(frame.get("payload").get("receiverId").asLong()).isEqualTo(BOB);
+        }
+        verify(sessions.get("carol-phone"), after(200).never()).sendMessage(any());
+    }
+
+    @Test
+    void aNoteToSelfIsDeliveredOncePerSession() throws Exception {
+        processor.sendDirectMessage(sessions.get("alice-phone"), ALICE, ALICE, "Y2lwaGVy", "bm9uY2U=");
+
+        assertThat(received("alice-phone").get("type").asText()).isEqualTo("DM");
+        assertThat(received("alice-laptop").get("type").asText()).isEqualTo("DM");
+        verify(sessions.get("alice-phone"), after(200).times(1)).sendMessage(any());
+        verify(sessions.get("alice-laptop"), times(1)).sendMessage(any());
+        verify(sessions.get("bob-phone"), never()).sendMessage(any());
+    }
+
+    @Test
+    void aRecipientWithoutSessionsStillGetsTheMessageStored() throws Exception {
+        sessionRegistry.unregister("bob-phone");
+
+        processor.sendDirectMessage(sessions.get("alice-phone"), ALICE, BOB, "Y2lwaGVy", "bm9uY2U=");
+
+        verify(directMessageService).sendDirectMessage(ALICE, BOB, "Y2lwaGVy", "bm9uY2U=");
+        assertThat(received("alice-laptop").get("type").asText()).isEqualTo("DM");
+        verify(sessions.get("bob-phone"), after(200).never()).sendMessage(any());
+    }
+
+    @Test
+    void aRejectedMessageIsReportedToTheSendingSessionOnly() throws Exception {
+        when(directMessageService.sendDirectMessage(ALICE, 404L, "Y2lwaGVy", "bm9uY2U="))
+            .thenThrow(new RuntimeException("Recipient not found"));
+
+        processor.sendDirectMessage(sessions.get("alice-phone"), ALICE, 404L, "Y2lwaGVy", "bm9uY2U=");
+
+        JsonNode error = received("alice-phone");
+        assertThat(error.get("type").asText()).isEqualTo("ERROR");
+        assertThat(error.get("payload").get("code").asText()).isEqualTo("DM_NOT_SENT");
+        assertThat(error.get("payload").get("receiverId").asLong()).isEqualTo(404L);
+        assertThat(error.get("payload").get("nonce").asText()).isEqualTo("bm9uY2U=");
+        verify(sessions.get("alice-laptop"), after(200).never()).sendMessage(any());
+    }
+
+    private void register(String sessionId, Long userId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        sessionRegistry.register(session, userId, "user" + userId, false, false);
+        sessions.put(sessionId, session);
+    }
+
+    private JsonNode received(String sessionId) throws Exception {
+        ArgumentCaptor<TextMessage> frame = ArgumentCaptor.forClass(TextMessage.class);
+        verify(sessions.get(sessionId), timeout(1000)).sendMessage(frame.capture());
+        return objectMapper.readTree(frame.getValue().getPayload());
+    }
+}
@@ -0,0 +1,61 @@
+package com.sermo.handler;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameCoalescerTest {
+
+    @Test
+    void mergesTextFramesIntoABatchArray() {
+        WebSocketMessage<?> merged = FrameCoalescer.merge(List.of(
+            new TextMessage("{\"type\":\"MESSAGE\",\"payload\":1}"),
+            new TextMessage("{\"type\":\"MESSAGE\",\"payload\":2}")));
+
+        assertThat(((TextMessage) merged).getPayload()).isEqualTo(
+            "{\"type\":\"BATCH\",\"payload\":[{\"type\":\"MESSAGE\",\"payload\":1},{\"type\":\"MESSAGE\",\"payload\":2}]}");
+    }
+
+    @Test
+    void mergesBinaryFramesWithALengthBeforeEach() {
+        WebSocketMessage<?> merged = FrameCoalescer.merge(List.of(
+            new BinaryMessage(new byte[]{1, 2, 3}),
+            new BinaryMessage(new byte[]{4})));
+
+        ByteBuffer buffer = ((BinaryMessage) merged).getPayload();
+        assertThat(buffer.get()).isEqualTo(BinaryFrameCodec.BATCH);
+        assertThat(buffer.getInt()).isEqualTo(3);
+        byte[] first = new byte[3];
+        buffer.get(first);
+        assertThat(first).containsExactly(1, 2, 3);
+        assertThat(buffer.getInt()).isEqualTo(1);
+        assertThat(buffer.get()).isEqualTo((byte) 4);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void aSingleFrameIsSentAsItIs() {
+        TextMessage only = new TextMessage("{}");
+
+        assertThat(FrameCoalescer.merge(List.of(only))).isSameAs(only);
+    }
+
+    @Test
+    void onlyMergesFramesOfTheSameEncoding() {
+        TextMessage text = new TextMessage("{}");
+        BinaryMessage binary = new BinaryMessage(new byte[]{1});
+
+        assertThat(FrameCoalescer.canMerge(text, new TextMessage("[]"))).isTrue();
+        assertThat(FrameCoalescer.canMerge(binary, new BinaryMessage(new byte[]{2}))).isTrue();
+        assertThat(FrameCoalescer.canMerge(text, binary)).isFalse();
+        assertThat(FrameCoalescer.canMerge(binary, text)).isFalse();
+        assertThat(FrameCoalescer.canMerge(new PingMessage(), new PingMessage())).isFalse();
+    }
+}
@@ -0,0 +1,100 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.MessageDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private FrameEncoder frameEncoder;
+
+    @BeforeEach
+    void setUp() {
+        frameEncoder = new FrameEncoder();
+        ReflectionTestUtils.setField(frameEncoder, "objectMapper", objectMapper);
+        frameEncoder.init();
+    }
+
+    @Test
+    void encodesTheEnvelopeAsJson() throws Exception {
+        OutboundFrame frame = frameEncoder.encode("TYPING", Map.of("channelId", 10L, "userId", 1L));
+
+        JsonNode envelope = objectMapper.readTree(frame.getText().asBytes());
+        assertThat(envelope.get("type").asText()).isEqualTo("TYPING");
+        assertThat(envelope.get("payload").get("channelId").asLong()).isEqualTo(10L);
+    }
+
+    @Test
+    void sharesOneTextFrameAcrossRecipients() throws Exception {
+        OutboundFrame frame = frameEncoder.encode("MESSAGE", message());
+
+        assertThat(frame.forSession(false)).isSameAs(frame.forSession(false));
+    }
+
+    @Test
+    void derivesTheBinaryEncodingAtMostOnce() {
+        AtomicInteger encodings = new AtomicInteger();
+        OutboundFrame frame = new OutboundFrame(new TextMessage("{}"), () -> {
+            encodings.incrementAndGet();
+            return new byte[] {1, 2, 3};
+        });
+
+        WebSocketMessage<?> first = frame.forSession(true);
+        WebSocketMessage<?> second = frame.forSession(true);
+
+        assertThat(encodings.get()).isEqualTo(1);
+        assertThat(first).isInstanceOf(BinaryMessage.class).isNotSameAs(second);
+        assertThat(first.getPayload()).isEqualTo(second.getPayload());
+    }
+
+    @Test
+    void neverEncodesBinaryWithoutABinaryRecipient() {
+        AtomicInteger encodings = new AtomicInteger();
+        OutboundFrame frame = new OutboundFrame(new TextMessage("{}"), () -> {
+            encodings.incrementAndGet();
+            return new byte[0];
+        });
+
+        frame.forSession(false);
+
+        assertThat(encodings.get()).isZero();
+    }
+
+    @Test
+    void fallsBackToTextForEventsWithoutABinaryEncoding() throws Exception {
+        OutboundFrame frame = frameEncoder.encode("RESYNC", Map.of("channelId", 10L));
+
+        assertThat(frame.forSession(true)).isSameAs(frame.getText());
+    }
+
+    @Test
+    void readsTheMessageBackFromAnEncodedFrame() throws Exception {
+        OutboundFrame frame = frameEncoder.encode("MESSAGE", message());
+
+        MessageDTO read = frameEncoder.readMessage(frame.getText().asBytes());
+
+        assertThat(read).isEqualTo(message());
+        assertThat(frameEncoder.readMessage("{\"type\":\"TYPING\",\"payload\":{}}".getBytes(StandardCharsets.UTF_8)))
+            .isNull();
+    }
+
+    private static MessageDTO message() {
+        return new MessageDTO(42L, 1L, "alice", 10L, "Y2lwaGVy", "bm9uY2U=",
+            LocalDateTime.of(2026, 1, 1, 12, 0), null, 7L, 7L, null);
+    }
+}
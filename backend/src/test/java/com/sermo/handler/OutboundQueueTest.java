@@ -0,0 +1,243 @@
+package com.sermo.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class OutboundQueueTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboundQueue.Metrics metrics = new OutboundQueue.Metrics(
+        new AtomicLong(),
+        meterRegistry.counter("dropped"),
+        meterRegistry.counter("evicted")
+    );
+
+    private ScheduledExecutorService writer;
+    private ExecutorService closer;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() {
+        writer = Executors.newSingleThreadScheduledExecutor();
+        closer = Executors.newCachedThreadPool();
+        session = mock(WebSocketSession.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    @Test
+    void sendsMessagesInOrder() throws Exception {
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 10_000));
+        TextMessage first = new TextMessage("first");
+        TextMessage second = new TextMessage("second");
+
+        assertThat(queue.offer(first)).isTrue();
+        assertThat(queue.offer(second)).isTrue();
+
+        verify(session, timeout(1000)).sendMessage(second);
+        assertThat(queue.getDepth()).isZero();
+        assertThat(metrics.queued().get()).isZero();
+    }
+
+    @Test
+    void evictsWhenTooManyMessagesAreQueued() throws Exception {
+        CountDownLatch release = blockSends();
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(2, 1 << 20, 10_000));
+
+        queue.offer(new TextMessage("in flight"));
+        queue.offer(new TextMessage("queued 1"));
+        queue.offer(new TextMessage("queued 2"));
+        boolean accepted = queue.offer(new TextMessage("one too many"));
+
+        assertThat(accepted).isFalse();
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    @Test
+    void evictsWhenTheBufferedBytesWouldExceedTheLimit() throws Exception {
+        CountDownLatch release = blockSends();
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(100, 10, 10_000));
+        TextMessage inFlight = new TextMessage("in flight");
+        queue.offer(inFlight);
+        verify(session, timeout(1000)).sendMessage(inFlight);
+
+        // Only what is still queued counts against the limit
+        assertThat(queue.offer(new TextMessage("12345"))).isTrue();
+        assertThat(queue.offer(new TextMessage("123456"))).isFalse();
+
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    @Test
+    void evictionDropsEverythingStillPending() throws Exception {
+        CountDownLatch release = blockSends();
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(2, 1 << 20, 10_000));
+        TextMessage inFlight = new TextMessage("in flight");
+        queue.offer(inFlight);
+        verify(session, timeout(1000)).sendMessage(inFlight);
+        queue.offer(new TextMessage("queued 1"));
+        queue.offer(new TextMessage("queued 2"));
+
+        queue.offer(new TextMessage("one too many"));
+        release.countDown();
+
+        // The rejected frame and both queued ones, none of which reach the socket
+        assertThat(metrics.dropped().count()).isEqualTo(3);
+        assertThat(queue.getDepth()).isZero();
+        assertThat(metrics.queued().get()).isZero();
+        verify(session, after(200).times(1)).sendMessage(any());
+        assertThat(queue.offer(new TextMessage("after eviction"))).isFalse();
+        assertThat(metrics.dropped().count()).isEqualTo(4);
+    }
+
+    @Test
+    void checkEvictsAStalledSendWithoutFurtherOffers() throws Exception {
+        CountDownLatch release = blockSends();
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 50));
+        queue.offer(new TextMessage("stuck"));
+
+        Thread.sleep(100);
+        queue.checkSendTime();
+
+        // The close runs on the closer even though the only writer thread is still blocked
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+        assertThat(queue.offer(new TextMessage("after eviction"))).isFalse();
+        release.countDown();
+    }
+
+    @Test
+    void checkLeavesAnIdleSessionAlone() throws Exception {
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 50));
+
+        Thread.sleep(100);
+        queue.checkSendTime();
+
+        assertThat(metrics.evicted().count()).isZero();
+        assertThat(queue.offer(new TextMessage("still open"))).isTrue();
+    }
+
+    @Test
+    void lightTrafficIsSentImmediately() throws Exception {
+        List<WebSocketMessage<?>> sent = recordSends();
+        OutboundQueue.Coalescing coalescing = coalescing(10_000, 100, 1 << 16);
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 10_000), coalescing);
+        TextMessage message = new TextMessage("{\"type\":\"MESSAGE\"}");
+
+        queue.offer(message);
+
+        // Well inside the ten second window, so it was not held back
+        verify(session, timeout(1000)).sendMessage(message);
+        assertThat(sent).containsExactly(message);
+        assertThat(coalescing.batchSize().count()).isZero();
+    }
+
+    @Test
+    void busySessionMergesPendingFramesIntoOneBatch() throws Exception {
+        List<WebSocketMessage<?>> sent = recordSends();
+        OutboundQueue.Coalescing coalescing = coalescing(200, 1, 1 << 16);
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 10_000), coalescing);
+
+        queue.offer(new TextMessage("{\"n\":1}"));
+        queue.offer(new TextMessage("{\"n\":2}"));
+        queue.offer(new TextMessage("{\"n\":3}"));
+
+        verify(session, timeout(1000)).sendMessage(any());
+        verify(session, after(200).times(1)).sendMessage(any());
+        assertThat(((TextMessage) sent.get(0)).getPayload())
+            .isEqualTo("{\"type\":\"BATCH\",\"payload\":[{\"n\":1},{\"n\":2},{\"n\":3}]}");
+        assertThat(coalescing.batchSize().count()).isEqualTo(1);
+        assertThat(coalescing.batchSize().totalAmount()).isEqualTo(3);
+        assertThat(coalescing.addedLatency().count()).isEqualTo(1);
+        assertThat(queue.getDepth()).isZero();
+    }
+
+    @Test
+    void batchesStopAtTheMaximumSize() throws Exception {
+        List<WebSocketMessage<?>> sent = recordSends();
+        // Room for two of the seven byte frames per batch
+        OutboundQueue.Coalescing coalescing = coalescing(200, 1, 14);
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 10_000), coalescing);
+
+        queue.offer(new TextMessage("{\"n\":1}"));
+        queue.offer(new TextMessage("{\"n\":2}"));
+        queue.offer(new TextMessage("{\"n\":3}"));
+
+        verify(session, timeout(1000).times(2)).sendMessage(any());
+        assertThat(sent).extracting(message -> ((TextMessage) message).getPayload()).containsExactly(
+            "{\"type\":\"BATCH\",\"payload\":[{\"n\":1},{\"n\":2}]}",
+            "{\"n\":3}");
+        assertThat(coalescing.batchSize().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sessionsThatDidNotOptInAreNeverBatched() throws Exception {
+        recordSends();
+        OutboundQueue queue = newQueue(new OutboundQueue.Limits(10, 1 << 20, 10_000));
+
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new TextMessage("{\"n\":" + i + "}"));
+        }
+
+        verify(session, timeout(1000).times(5)).sendMessage(any());
+        verify(session, never()).close(any());
+    }
+
+    private OutboundQueue newQueue(OutboundQueue.Limits limits) {
+        return newQueue(limits, null);
+    }
+
+    private OutboundQueue newQueue(OutboundQueue.Limits limits, OutboundQueue.Coalescing coalescing) {
+        return new OutboundQueue(session, false, writer, closer, limits, metrics, coalescing);
+    }
+
+    private OutboundQueue.Coalescing coalescing(long windowMillis, int rateThreshold, int maxBatchBytes) {
+        return new OutboundQueue.Coalescing(windowMillis, rateThreshold, maxBatchBytes,
+            meterRegistry.summary("batch.size"), meterRegistry.timer("batch.latency"));
+    }
+
+    private List<WebSocketMessage<?>> recordSends() throws Exception {
+        List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(session).sendMessage(any());
+        return sent;
+    }
+
+    private CountDownLatch blockSends() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(session).sendMessage(any());
+        return release;
+    }
+}
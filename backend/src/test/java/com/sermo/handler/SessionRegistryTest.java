@@ -0,0 +1,116 @@
+package com.sermo.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionRegistryTest {
+
+    private SessionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SessionRegistry();
+        ReflectionTestUtils.setField(registry, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(registry, "writerThreads", 1);
+        ReflectionTestUtils.setField(registry, "maxQueuedMessages", 100);
+        ReflectionTestUtils.setField(registry, "bufferSizeLimit", 1L << 20);
+        ReflectionTestUtils.setField(registry, "sendTimeLimit", 10_000L);
+        ReflectionTestUtils.setField(registry, "coalescingWindow", 20L);
+        ReflectionTestUtils.setField(registry, "coalescingRateThreshold", 50);
+        ReflectionTestUtils.setField(registry, "coalescingMaxBatchBytes", 65536);
+        registry.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void indexesSubscribersPerChannel() {
+        register("s1", 1L);
+        register("s2", 2L);
+        registry.subscribe("s1", 10L);
+        registry.subscribe("s2", 10L);
+        registry.subscribe("s2", 11L);
+
+        assertThat(subscriberIds(10L)).containsExactlyInAnyOrder("s1", "s2");
+        assertThat(subscriberIds(11L)).containsExactly("s2");
+        assertThat(registry.getSubscribers(12L)).isEmpty();
+        assertThat(registry.hasSubscribers(12L)).isFalse();
+    }
+
+    @Test
+    void ignoresSubscriptionsFromUnknownSessions() {
+        registry.subscribe("gone", 10L);
+
+        assertThat(registry.hasSubscribers(10L)).isFalse();
+    }
+
+    @Test
+    void unregisterRemovesEverySubscription() {
+        register("s1", 1L);
+        register("s2", 2L);
+        registry.subscribe("s1", 10L);
+        registry.subscribe("s1", 11L);
+        registry.subscribe("s2", 11L);
+
+        assertThat(registry.unregister("s1")).isEqualTo(1L);
+
+        assertThat(registry.hasSubscribers(10L)).isFalse();
+        assertThat(subscriberIds(11L)).containsExactly("s2");
+        assertThat(registry.getOutbound("s1")).isNull();
+    }
+
+    @Test
+    void notifiesOnFirstAndLastSubscriberOnly() {
+        List<Long> changes = new ArrayList<>();
+        registry.setChannelListener(changes::add);
+        register("s1", 1L);
+        register("s2", 2L);
+
+        registry.subscribe("s1", 10L);
+        registry.subscribe("s2", 10L);
+        registry.unsubscribe("s1", 10L);
+        registry.unsubscribe("s2", 10L);
+
+        assertThat(changes).containsExactly(10L, 10L);
+    }
+
+    @Test
+    void tracksEverySessionOfAUser() {
+        register("phone", 1L);
+        register("laptop", 1L);
+
+        assertThat(registry.getUserSessions(1L)).hasSize(2);
+        registry.unregister("phone");
+        assertThat(registry.hasSessions(1L)).isTrue();
+        registry.unregister("laptop");
+        assertThat(registry.hasSessions(1L)).isFalse();
+        assertThat(registry.getUserSessions(1L)).isEmpty();
+    }
+
+    private void register(String sessionId, Long userId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        registry.register(session, userId, "user" + userId, false, false);
+    }
+
+    private List<String> subscriberIds(Long channelId) {
+        return registry.getSubscribers(channelId).stream()
+            .map(OutboundQueue::getId)
+            .collect(Collectors.toList());
+    }
+}
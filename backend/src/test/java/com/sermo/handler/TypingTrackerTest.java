@@ -0,0 +1,148 @@
+package com.sermo.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.service.PresenceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class TypingTrackerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TypingTracker tracker;
+    private PresenceService presenceService;
+    private ChannelBroadcaster channelBroadcaster;
+
+    @BeforeEach
+    void setUp() {
+        FrameEncoder frameEncoder = new FrameEncoder();
+        ReflectionTestUtils.setField(frameEncoder, "objectMapper", objectMapper);
+        frameEncoder.init();
+        presenceService = mock(PresenceService.class);
+        channelBroadcaster = mock(ChannelBroadcaster.class);
+
+        tracker = new TypingTracker();
+        ReflectionTestUtils.setField(tracker, "presenceService", presenceService);
+        ReflectionTestUtils.setField(tracker, "frameEncoder", frameEncoder);
+        ReflectionTestUtils.setField(tracker, "channelBroadcaster", channelBroadcaster);
+        ReflectionTestUtils.setField(tracker, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(tracker, "ttl", 10_000L);
+        ReflectionTestUtils.setField(tracker, "broadcastInterval", 10_000L);
+        tracker.init();
+    }
+
+    @Test
+    void repeatedKeystrokesInsideTheIntervalAreAnnouncedOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            tracker.typing(1L, 10L);
+        }
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10");
+        verify(presenceService).setTyping(1L, "10");
+        assertThat(meterRegistry.counter("sermo.typing.received").count()).isEqualTo(5);
+        assertThat(meterRegistry.counter("sermo.typing.suppressed").count()).isEqualTo(4);
+    }
+
+    @Test
+    void announcesAgainOnceTheIntervalHasPassed() throws Exception {
+        ReflectionTestUtils.setField(tracker, "broadcastInterval", 50L);
+
+        tracker.typing(1L, 10L);
+        tracker.typing(1L, 10L);
+        Thread.sleep(100);
+        tracker.typing(1L, 10L);
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10", "TYPING 1 10");
+    }
+
+    @Test
+    void eachChannelIsTrackedOnItsOwn() throws Exception {
+        tracker.typing(1L, 10L);
+        tracker.typing(1L, 11L);
+        tracker.typing(2L, 10L);
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10", "TYPING 1 11", "TYPING 2 10");
+    }
+
+    @Test
+    void stoppingBroadcastsTypingStopAndClearsPresence() throws Exception {
+        tracker.typing(1L, 10L);
+
+        tracker.stop(1L, 10L);
+        tracker.stop(1L, 10L);
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10", "TYPING_STOP 1 10");
+        verify(presenceService).clearTyping(1L, "10");
+    }
+
+    @Test
+    void stoppingWithoutTypingSendsNothing() throws Exception {
+        tracker.stop(1L, 10L);
+
+        verify(channelBroadcaster, never()).broadcast(anyLong(), any(OutboundFrame.class));
+        verify(presenceService, never()).clearTyping(anyLong(), anyString());
+    }
+
+    @Test
+    void typingAgainAfterAStopIsAnnouncedRightAway() throws Exception {
+        tracker.typing(1L, 10L);
+        tracker.stop(1L, 10L);
+
+        tracker.typing(1L, 10L);
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10", "TYPING_STOP 1 10", "TYPING 1 10");
+    }
+
+    @Test
+    void expiresOnceTheDeadlinePasses() throws Exception {
+        ReflectionTestUtils.setField(tracker, "ttl", 0L);
+        tracker.typing(1L, 10L);
+
+        tracker.expire();
+        tracker.expire();
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10", "TYPING_STOP 1 10");
+        // The Redis entry expires on its own
+        verify(presenceService, never()).clearTyping(anyLong(), anyString());
+    }
+
+    @Test
+    void keystrokesKeepTheDeadlineAlive() throws Exception {
+        tracker.typing(1L, 10L);
+
+        tracker.expire();
+
+        assertThat(broadcasts()).containsExactly("TYPING 1 10");
+    }
+
+    private List<String> broadcasts() throws Exception {
+        ArgumentCaptor<Long> channels = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<OutboundFrame> frames = ArgumentCaptor.forClass(OutboundFrame.class);
+        verify(channelBroadcaster, atLeast(0)).broadcast(channels.capture(), frames.capture());
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < frames.getAllValues().size(); i++) {
+            JsonNode frame = objectMapper.readTree(frames.getAllValues().get(i).getText().getPayload());
+            JsonNode payload = frame.get("payload");
+            assertThat(payload.get("channelId").asLong()).isEqualTo(channels.getAllValues().get(i));
+            events.add(frame.get("type").asText() + " " + payload.get("userId").asLong() + " " + payload.get("channelId").asText());
+        }
+        return events;
+    }
+}
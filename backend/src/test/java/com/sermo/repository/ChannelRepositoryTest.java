@@ -0,0 +1,91 @@
+package com.sermo.repository;
+
+import com.sermo.dto.ChannelDTO;
+import com.sermo.model.Channel;
+import com.sermo.model.Server;
+import com.sermo.model.User;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChannelRepositoryTest extends JpaTestSupport {
+
+    @Autowired
+    private ChannelRepository channelRepository;
+
+    private Statistics statistics;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        statistics = statistics();
+        alice = user("alice");
+    }
+
+    @Test
+    void listsTheChannelsOfManyServersInOneStatement() {
+        Server first = server("first");
+        Server second = server("second");
+        Server other = server("other");
+        Channel general = channel("general", first, false);
+        Channel secret = channel("secret", second, true);
+        channel("elsewhere", other, false);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        List<ChannelDTO> channels = channelRepository.findChannelDTOsByServerIds(List.of(first.getId(), second.getId()));
+
+        assertThat(channels).extracting(ChannelDTO::getId).containsExactlyInAnyOrder(general.getId(), secret.getId());
+        ChannelDTO dto = channels.stream().filter(c -> c.getId().equals(secret.getId())).findFirst().orElseThrow();
+        assertThat(dto.getName()).isEqualTo("secret");
+        assertThat(dto.getServerId()).isEqualTo(second.getId());
+        assertThat(dto.getIsPrivate()).isTrue();
+        assertThat(dto.getCreatedAt()).isNotNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void listsTheChannelsOfOneServer() {
+        Server first = server("first");
+        Server second = server("second");
+        Channel general = channel("general", first, false);
+        channel("elsewhere", second, false);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        assertThat(channelRepository.findChannelDTOsByServerId(first.getId()))
+            .extracting(ChannelDTO::getId)
+            .containsExactly(general.getId());
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void mapsChannelsToTheirServers() {
+        Server first = server("first");
+        Channel general = channel("general", first, false);
+        entityManager.flush();
+
+        List<Object[]> rows = channelRepository.findServerIds(List.of(general.getId(), -1L));
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).containsExactly(general.getId(), first.getId());
+    }
+
+    private Server server(String name) {
+        return server(name, alice);
+    }
+
+    private Channel channel(String name, Server server, boolean isPrivate) {
+        Channel channel = channel(name, server);
+        channel.setIsPrivate(isPrivate);
+        return channel;
+    }
+}
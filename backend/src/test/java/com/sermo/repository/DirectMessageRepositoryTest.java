@@ -0,0 +1,112 @@
+package com.sermo.repository;
+
+import com.sermo.dto.DirectMessageDTO;
+import com.sermo.model.DMKey;
+import com.sermo.model.DirectMessage;
+import com.sermo.model.User;
+import com.sermo.util.ConversationKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectMessageRepositoryTest extends JpaTestSupport {
+
+    @Autowired
+    private DirectMessageRepository directMessageRepository;
+
+    @Autowired
+    private DMKeyRepository dmKeyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        alice = user("alice");
+        bob = user("bob");
+    }
+
+    @Test
+    void bothDirectionsShareOneConversationKey() {
+        Long first = send(alice, bob);
+        Long second = send(bob, alice);
+        send(alice, user("carol"));
+        entityManager.clear();
+
+        List<Long> ids = directMessageRepository.findLatest(ConversationKey.of(bob.getId(), alice.getId()), PageRequest.of(0, 10))
+            .stream()
+            .map(DirectMessageDTO::getId)
+            .collect(Collectors.toList());
+        assertThat(ids).containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    void historyIsARangeScanOfTheConversationIndex() {
+        String latest = explain("SELECT id FROM direct_messages WHERE conversation_key = '1:2' " +
+                                "ORDER BY created_at DESC, id DESC LIMIT 50");
+        assertThat(latest).containsIgnoringCase("IDX_DM_CONVERSATION_CREATED_ID: CONVERSATION_KEY = '1:2' */");
+
+        // The keyset bound is part of the index seek, not a filter over the conversation
+        String before = explain("SELECT id FROM direct_messages WHERE conversation_key = '1:2' " +
+                                "AND created_at <= TIMESTAMP '2026-01-01 12:00:00' ORDER BY created_at DESC, id DESC LIMIT 50");
+        assertThat(before.replaceAll("\\s+", " ")).containsIgnoringCase(
+            "IDX_DM_CONVERSATION_CREATED_ID: CONVERSATION_KEY = '1:2' AND CREATED_AT <= TIMESTAMP '2026-01-01 12:00:00' */");
+    }
+
+    @Test
+    void findsTheDMKeyByTheCanonicalPair() {
+        DMKey key = new DMKey();
+        // Given in the wrong order; the row is stored (lower, higher)
+        key.setUser1(higher());
+        key.setUser2(lower());
+        key.setEncryptedKeyUser1("for-higher");
+        key.setEncryptedKeyUser2("for-lower");
+        entityManager.persistAndFlush(key);
+        entityManager.clear();
+
+        DMKey found = dmKeyRepository.findByUser1IdAndUser2Id(lower().getId(), higher().getId()).orElseThrow();
+        assertThat(found.getEncryptedKeyUser1()).isEqualTo("for-lower");
+        assertThat(found.getEncryptedKeyUser2()).isEqualTo("for-higher");
+        assertThat(dmKeyRepository.findByUser1IdAndUser2Id(higher().getId(), lower().getId())).isEmpty();
+    }
+
+    @Test
+    void dmKeyLookupUsesTheUniqueIndex() {
+        String plan = explain("SELECT id FROM dm_keys WHERE user1_id = 1 AND user2_id = 2");
+
+        assertThat(plan.replaceAll("\\s+", " "))
+            .containsPattern("/\\* PUBLIC\\.\\w+: USER1_ID = \\S+ AS BIGINT\\) AND USER2_ID = \\S+ AS BIGINT\\) \\*/");
+        assertThat(plan).doesNotContain("tableScan");
+    }
+
+    private Long send(User sender, User receiver) {
+        DirectMessage message = new DirectMessage();
+        message.setSender(sender);
+        message.setReceiver(receiver);
+        message.setEncryptedContent("Y2lwaGVy");
+        message.setNonce("bm9uY2U=");
+        return entityManager.persistAndFlush(message).getId();
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    private User lower() {
+        return alice.getId() < bob.getId() ? alice : bob;
+    }
+
+    private User higher() {
+        return alice.getId() < bob.getId() ? bob : alice;
+    }
+}
@@ -0,0 +1,95 @@
+package com.sermo.repository;
+
+import com.sermo.config.CacheConfig;
+import com.sermo.model.Channel;
+import com.sermo.model.Message;
+import com.sermo.model.Server;
+import com.sermo.model.User;
+import com.sermo.util.SnowflakeIdGenerator;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+
+/**
+ * Base for tests against the JPA model on an in-memory H2 database, with builders
+ * for the entities most tests need.
+ *
+ * Every context registers the same named JCache manager for the second-level cache,
+ * so a context is closed after its test class rather than kept for reuse.
+ */
+@DataJpaTest
+@DirtiesContext
+@Import({SnowflakeIdGenerator.class, CacheConfig.class})
+@TestPropertySource(properties = {
+    "sermo.id.node-id=1",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public abstract class JpaTestSupport {
+
+    @Autowired
+    protected TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Hibernate's counters, e.g. to check how many statements a query took.
+     */
+    protected Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    protected User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash("hash");
+        user.setPublicKey("key");
+        return entityManager.persist(user);
+    }
+
+    protected Server server(String name, User owner) {
+        Server server = new Server();
+        server.setName(name);
+        server.setOwner(owner);
+        return entityManager.persist(server);
+    }
+
+    protected Channel channel(String name, Server server) {
+        Channel channel = new Channel();
+        channel.setName(name);
+        channel.setServer(server);
+        return entityManager.persist(channel);
+    }
+
+    /**
+     * Persists a message with the given sequence, backdated to {@code createdAt}
+     * (which is otherwise stamped on insert).
+     */
+    protected Message message(Channel channel, User sender, LocalDateTime createdAt, long seq) {
+        Message message = new Message();
+        message.setSender(sender);
+        message.setChannel(channel);
+        message.setEncryptedContent("Y2lwaGVy");
+        message.setNonce("bm9uY2U=");
+        message.setSeq(seq);
+        message.setVersion(seq);
+        entityManager.persistAndFlush(message);
+        entityManager.getEntityManager()
+            .createQuery("UPDATE Message m SET m.createdAt = :createdAt WHERE m.id = :id")
+            .setParameter("createdAt", createdAt)
+            .setParameter("id", message.getId())
+            .executeUpdate();
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+}
@@ -0,0 +1,100 @@
+package com.sermo.repository;
+
+import com.sermo.dto.MessageDTO;
+import com.sermo.model.Channel;
+import com.sermo.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageRepositoryTest extends JpaTestSupport {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private User alice;
+    private Channel channel;
+
+    @BeforeEach
+    void setUp() {
+        alice = user("alice");
+        channel = channel("general", server("server", alice));
+    }
+
+    @Test
+    void pagesBackwardsThroughMessagesSharingATimestamp() {
+        Long a = save(T0, 1L);
+        Long b = save(T0.plusSeconds(1), 2L);
+        Long c = save(T0.plusSeconds(1), 3L);
+        Long d = save(T0.plusSeconds(1), 4L);
+        Long e = save(T0.plusSeconds(2), 5L);
+
+        List<Long> latest = ids(messageRepository.findLatest(channel.getId(), PageRequest.of(0, 2)));
+        assertThat(latest).containsExactly(e, d);
+
+        List<Long> older = ids(messageRepository.findBefore(channel.getId(), T0.plusSeconds(1), d, PageRequest.of(0, 2)));
+        assertThat(older).containsExactly(c, b);
+
+        List<Long> oldest = ids(messageRepository.findBefore(channel.getId(), T0.plusSeconds(1), b, PageRequest.of(0, 2)));
+        assertThat(oldest).containsExactly(a);
+    }
+
+    @Test
+    void pagesForwardsThroughMessagesSharingATimestamp() {
+        Long a = save(T0, 1L);
+        Long b = save(T0.plusSeconds(1), 2L);
+        Long c = save(T0.plusSeconds(1), 3L);
+        Long d = save(T0.plusSeconds(2), 4L);
+
+        assertThat(ids(messageRepository.findAfter(channel.getId(), T0, a, PageRequest.of(0, 2))))
+            .containsExactly(b, c);
+        assertThat(ids(messageRepository.findAfter(channel.getId(), T0.plusSeconds(1), c, PageRequest.of(0, 2))))
+            .containsExactly(d);
+    }
+
+    @Test
+    void historyLeavesOutTombstones() {
+        Long kept = save(T0, 1L);
+        Long deleted = save(T0.plusSeconds(1), 2L);
+        entityManager.getEntityManager()
+            .createQuery("UPDATE Message m SET m.deletedAt = :now WHERE m.id = :id")
+            .setParameter("now", T0.plusSeconds(5))
+            .setParameter("id", deleted)
+            .executeUpdate();
+
+        assertThat(ids(messageRepository.findLatest(channel.getId(), PageRequest.of(0, 10)))).containsExactly(kept);
+    }
+
+    @Test
+    void resumesAfterTheLastSeenSequence() {
+        save(T0, 1L);
+        Long second = save(T0.plusSeconds(1), 2L);
+        Long third = save(T0.plusSeconds(2), 3L);
+        Long fourth = save(T0.plusSeconds(3), 4L);
+
+        assertThat(ids(messageRepository.findSinceSeq(channel.getId(), 1L, PageRequest.of(0, 10))))
+            .containsExactly(second, third, fourth);
+        assertThat(ids(messageRepository.findSinceSeq(channel.getId(), 1L, PageRequest.of(0, 2))))
+            .containsExactly(second, third);
+        assertThat(messageRepository.findSinceSeq(channel.getId(), 4L, PageRequest.of(0, 10))).isEmpty();
+    }
+
+    private Long save(LocalDateTime createdAt, long seq) {
+        Long id = message(channel, alice, createdAt, seq).getId();
+        entityManager.clear();
+        return id;
+    }
+
+    private static List<Long> ids(List<MessageDTO> messages) {
+        return messages.stream().map(MessageDTO::getId).collect(Collectors.toList());
+    }
+}
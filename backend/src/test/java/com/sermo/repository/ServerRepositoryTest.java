@@ -0,0 +1,84 @@
+package com.sermo.repository;
+
+import com.sermo.dto.ServerDTO;
+import com.sermo.model.Server;
+import com.sermo.model.ServerMember;
+import com.sermo.model.User;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerRepositoryTest extends JpaTestSupport {
+
+    @Autowired
+    private ServerRepository serverRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = statistics();
+    }
+
+    @Test
+    void listsAMembersServersInOneStatement() {
+        User alice = user("alice");
+        User bob = user("bob");
+        Server first = server("first", alice, true);
+        Server second = server("second", bob, false);
+        Server other = server("other", bob, true);
+        member(first, alice);
+        member(second, alice);
+        member(other, bob);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        List<ServerDTO> servers = serverRepository.findServerDTOsByMemberId(alice.getId());
+
+        assertThat(servers).extracting(ServerDTO::getName).containsExactlyInAnyOrder("first", "second");
+        ServerDTO dto = servers.stream().filter(s -> s.getName().equals("second")).findFirst().orElseThrow();
+        assertThat(dto.getId()).isEqualTo(second.getId());
+        assertThat(dto.getOwnerId()).isEqualTo(bob.getId());
+        assertThat(dto.getIsPublic()).isFalse();
+        assertThat(dto.getCreatedAt()).isNotNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void listsOnlyPublicServers() {
+        User alice = user("alice");
+        Server open = server("open", alice, true);
+        server("closed", alice, false);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        List<Long> ids = serverRepository.findPublicServerDTOs().stream()
+            .map(ServerDTO::getId)
+            .collect(Collectors.toList());
+
+        assertThat(ids).containsExactly(open.getId());
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    private Server server(String name, User owner, boolean isPublic) {
+        Server server = server(name, owner);
+        server.setIsPublic(isPublic);
+        return server;
+    }
+
+    private void member(Server server, User user) {
+        ServerMember member = new ServerMember();
+        member.setServer(server);
+        member.setUser(user);
+        entityManager.persist(member);
+    }
+}
@@ -0,0 +1,190 @@
+package com.sermo.service;
+
+import com.sermo.model.Server;
+import com.sermo.model.User;
+import com.sermo.repository.ChannelKeyRepository;
+import com.sermo.repository.ServerMemberRepository;
+import com.sermo.repository.ServerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The statements run against an in-memory stand-in for channel_keys that applies
+ * the same conflict rules as the SQL.
+ */
+class ChannelKeyServiceTest {
+
+    private static final Long CHANNEL = 10L;
+    private static final Long SERVER = 1L;
+    private static final Long OWNER = 100L;
+
+    private ChannelKeyService service;
+    private JdbcTemplate jdbcTemplate;
+    private ServerMemberRepository serverMemberRepository;
+    private final Map<Long, String> table = new HashMap<>();
+    private final List<List<Long>> statements = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class))).thenAnswer(invocation -> execute(invocation.getArgument(0)));
+        serverMemberRepository = mock(ServerMemberRepository.class);
+        // Everyone is a member unless a test says otherwise
+        when(serverMemberRepository.findMemberIds(eq(SERVER), anyCollection()))
+            .thenAnswer(invocation -> new ArrayList<>(invocation.<Collection<Long>>getArgument(1)));
+        ChannelService channelService = mock(ChannelService.class);
+        when(channelService.getServerIds(List.of(CHANNEL))).thenReturn(Map.of(CHANNEL, SERVER));
+        ServerRepository serverRepository = mock(ServerRepository.class);
+        when(serverRepository.findById(SERVER)).thenReturn(Optional.of(server()));
+
+        service = new ChannelKeyService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "channelKeyRepository", mock(ChannelKeyRepository.class));
+        ReflectionTestUtils.setField(service, "serverMemberRepository", serverMemberRepository);
+        ReflectionTestUtils.setField(service, "serverRepository", serverRepository);
+        ReflectionTestUtils.setField(service, "channelService", channelService);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "maxKeysPerRequest", 5);
+    }
+
+    @Test
+    void writesKeysInChunksAndCountsOnlyNewRows() {
+        table.put(2L, "existing");
+
+        int written = service.shareKeys(CHANNEL, OWNER, keys(1L, 2L, 3L, 4L, 5L));
+
+        assertThat(statements).containsExactly(List.of(1L, 2L), List.of(3L, 4L), List.of(5L));
+        assertThat(written).isEqualTo(4);
+        assertThat(table).containsEntry(2L, "existing").containsEntry(5L, "key-5");
+    }
+
+    @Test
+    void resharingTheCallersOwnKeyReplacesIt() {
+        table.put(OWNER, "stale");
+
+        assertThat(service.shareKey(CHANNEL, OWNER, "fresh")).isEqualTo(1);
+
+        assertThat(table).containsEntry(OWNER, "fresh");
+    }
+
+    @Test
+    void ownKeyInABatchIsReplacedWhileOthersKeepTheirs() {
+        table.put(OWNER, "stale");
+        table.put(2L, "existing");
+        Map<Long, String> keys = keys(2L, 3L);
+        keys.put(OWNER, "fresh");
+
+        assertThat(service.shareKeys(CHANNEL, OWNER, keys)).isEqualTo(2);
+
+        assertThat(table).containsEntry(OWNER, "fresh").containsEntry(2L, "existing").containsEntry(3L, "key-3");
+    }
+
+    @Test
+    void rotationReplacesEveryKeyItIsGiven() {
+        table.put(2L, "old");
+
+        assertThat(service.rotateKeys(CHANNEL, OWNER, keys(2L, 3L, 4L))).isEqualTo(3);
+
+        assertThat(table).containsEntry(2L, "key-2");
+        assertThat(statements).containsExactly(List.of(2L, 3L), List.of(4L));
+    }
+
+    @Test
+    void onlyTheServerOwnerMayRotate() {
+        assertThatThrownBy(() -> service.rotateKeys(CHANNEL, 2L, keys(3L)))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Only the server owner can rotate channel keys");
+        assertThat(statements).isEmpty();
+    }
+
+    @Test
+    void rejectsRecipientsOutsideTheServer() {
+        when(serverMemberRepository.findMemberIds(eq(SERVER), anyCollection())).thenReturn(List.of(OWNER, 1L));
+
+        assertThatThrownBy(() -> service.shareKeys(CHANNEL, OWNER, keys(1L, 2L)))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Keys can only be shared with members of the server");
+        verify(jdbcTemplate, never()).update(any(PreparedStatementCreator.class));
+    }
+
+    @Test
+    void rejectsOversizedRequests() {
+        assertThatThrownBy(() -> service.shareKeys(CHANNEL, OWNER, keys(1L, 2L, 3L, 4L, 5L, 6L)))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("At most 5 keys per request");
+    }
+
+    private int execute(PreparedStatementCreator creator) throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        List<Object[]> arrays = new ArrayList<>();
+        when(connection.createArrayOf(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            arrays.add(invocation.getArgument(1));
+            return mock(Array.class);
+        });
+        creator.createPreparedStatement(connection);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection).prepareStatement(sql.capture());
+        boolean upsert = sql.getValue().contains("DO UPDATE");
+        Object[] userIds = arrays.get(0);
+        Object[] encryptedKeys = arrays.get(1);
+
+        statements.add(Arrays.stream(userIds).map(Long.class::cast).collect(Collectors.toList()));
+        int written = 0;
+        for (int i = 0; i < userIds.length; i++) {
+            Long userId = (Long) userIds[i];
+            if (upsert || !table.containsKey(userId)) {
+                table.put(userId, (String) encryptedKeys[i]);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static Map<Long, String> keys(Long... userIds) {
+        Map<Long, String> keys = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            keys.put(userId, "key-" + userId);
+        }
+        return keys;
+    }
+
+    private static Server server() {
+        User owner = new User();
+        owner.setId(OWNER);
+        Server server = new Server();
+        server.setId(SERVER);
+        server.setOwner(owner);
+        return server;
+    }
+}
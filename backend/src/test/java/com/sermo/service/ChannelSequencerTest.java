@@ -0,0 +1,182 @@
+package com.sermo.service;
+
+import com.sermo.model.Channel;
+import com.sermo.model.User;
+import com.sermo.repository.JpaTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the sequencer's SQL against the database, with each reservation committed
+ * in its own transaction as it is in production.
+ */
+@Import(ChannelSequencer.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ChannelSequencerTest extends JpaTestSupport {
+
+    @Autowired
+    private ChannelSequencer sequencer;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = transactionTemplate.execute(status -> user("owner" + System.nanoTime()));
+    }
+
+    @Test
+    void seedsTheCounterFromTheChannelsExistingMessages() {
+        Channel channel = newChannel();
+        transactionTemplate.executeWithoutResult(status -> {
+            message(channel, owner, LocalDateTime.now(), 4);
+            // An edit drew a later number from the same counter
+            message(channel, owner, LocalDateTime.now(), 5).setVersion(7L);
+        });
+
+        assertThat(reserve(channel.getId(), 1)).isEqualTo(8L);
+        assertThat(reserve(channel.getId(), 1)).isEqualTo(9L);
+    }
+
+    @Test
+    void reserveReturnsTheLastSequenceOfTheRange() {
+        Long channelId = newChannel().getId();
+
+        assertThat(reserve(channelId, 5)).isEqualTo(5L);
+        assertThat(reserve(channelId, 3)).isEqualTo(8L);
+        assertThat(lastSeq(channelId)).isEqualTo(8L);
+    }
+
+    @Test
+    void rejectsUnknownChannels() {
+        assertThatThrownBy(() -> reserve(-1L, 1))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("Channel not found");
+    }
+
+    @Test
+    void requiresTheCallersTransaction() {
+        Long channelId = newChannel().getId();
+
+        assertThatThrownBy(() -> sequencer.next(channelId))
+            .isInstanceOf(IllegalTransactionStateException.class);
+    }
+
+    @Test
+    void aRolledBackReservationGivesItsNumbersBack() {
+        Long channelId = newChannel().getId();
+        reserve(channelId, 1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(sequencer.next(channelId)).isEqualTo(2L);
+            status.setRollbackOnly();
+        });
+
+        assertThat(reserve(channelId, 1)).isEqualTo(2L);
+    }
+
+    @Test
+    void aSecondReservationWaitsForTheFirstToCommit() throws Exception {
+        Long channelId = newChannel().getId();
+        reserve(channelId, 1);
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> first = executor.submit(() -> transactionTemplate.execute(status -> {
+                long seq = sequencer.next(channelId);
+                reserved.countDown();
+                await(commit);
+                return seq;
+            }));
+            assertThat(reserved.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<Long> second = executor.submit(() -> reserve(channelId, 1));
+            Thread.sleep(200);
+            assertThat(second.isDone()).isFalse();
+
+            commit.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(2L);
+            // Issued only after the first committed, so 3 is never visible without 2
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(3L);
+        } finally {
+            commit.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentReservationsAreUniqueAndContiguous() throws Exception {
+        Long channelId = newChannel().getId();
+        int threads = 8;
+        int perThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Long> issued = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        issued.add(reserve(channelId, 1));
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Long> expected = LongStream.rangeClosed(1, threads * perThread).boxed().collect(Collectors.toList());
+        assertThat(issued).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(lastSeq(channelId)).isEqualTo(threads * perThread);
+    }
+
+    private Channel newChannel() {
+        return transactionTemplate.execute(status -> channel("general", server("server", owner)));
+    }
+
+    private long reserve(Long channelId, int count) {
+        return transactionTemplate.execute(status -> sequencer.reserve(channelId, count));
+    }
+
+    private Long lastSeq(Long channelId) {
+        return jdbcTemplate.queryForObject("SELECT last_seq FROM channels WHERE id = ?", Long.class, channelId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.sermo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sermo.repository.ChannelRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChannelServiceTest {
+
+    private ChannelService channelService;
+    private ChannelRepository channelRepository;
+    private final List<Collection<Long>> lookups = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        channelRepository = mock(ChannelRepository.class);
+        // Channel n belongs to server n * 100; negative ids do not exist
+        when(channelRepository.findServerIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            lookups.add(List.copyOf(ids));
+            List<Object[]> rows = new ArrayList<>();
+            ids.stream().filter(id -> id > 0).forEach(id -> rows.add(new Object[]{id, id * 100}));
+            return rows;
+        });
+
+        channelService = new ChannelService();
+        ReflectionTestUtils.setField(channelService, "channelRepository", channelRepository);
+        ReflectionTestUtils.setField(channelService, "serverIdCacheSize", 100L);
+        channelService.init();
+    }
+
+    @Test
+    void resolvesOnlyTheChannelsNotSeenBefore() {
+        assertThat(channelService.getServerIds(List.of(1L, 2L))).containsEntry(1L, 100L).containsEntry(2L, 200L);
+
+        assertThat(channelService.getServerIds(List.of(2L, 3L))).containsEntry(2L, 200L).containsEntry(3L, 300L);
+
+        assertThat(lookups).hasSize(2);
+        assertThat(lookups.get(1)).containsExactly(3L);
+    }
+
+    @Test
+    void unknownChannelsAreLeftOutAndLookedUpAgain() {
+        assertThat(channelService.getServerIds(List.of(1L, -1L))).containsOnlyKeys(1L);
+        assertThat(channelService.getServerIds(List.of(-1L))).isEmpty();
+
+        verify(channelRepository, times(2)).findServerIds(anyCollection());
+    }
+
+    @Test
+    void holdsNoMoreThanTheConfiguredNumberOfChannels() {
+        for (long id = 1; id <= 1000; id++) {
+            channelService.getServerIds(List.of(id));
+        }
+        Cache<?, ?> cache = (Cache<?, ?>) ReflectionTestUtils.getField(channelService, "serverIdByChannel");
+        cache.cleanUp();
+
+        assertThat(cache.estimatedSize()).isLessThanOrEqualTo(100);
+    }
+}
@@ -0,0 +1,37 @@
+package com.sermo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HistoryCursorTest {
+
+    @Test
+    void roundTripsAtMicrosecondPrecision() {
+        HistoryCursor cursor = new HistoryCursor(LocalDateTime.of(2026, 1, 1, 12, 0, 0, 123_456_000), 42L);
+
+        String encoded = cursor.encode();
+
+        assertThat(encoded).isEqualTo("1767268800123456_42");
+        assertThat(HistoryCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsTimesBeforeTheEpoch() {
+        HistoryCursor cursor = new HistoryCursor(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 500_000_000), 7L);
+
+        assertThat(HistoryCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        for (String value : new String[] {"", "abc", "123", "123_", "_42", "12x_42"}) {
+            assertThatThrownBy(() -> HistoryCursor.decode(value))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Invalid cursor");
+        }
+    }
+}
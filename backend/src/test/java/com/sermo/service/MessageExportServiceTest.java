@@ -0,0 +1,217 @@
+package com.sermo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.MessageDTO;
+import com.sermo.handler.BinaryFrameCodec;
+import com.sermo.model.Channel;
+import com.sermo.model.Message;
+import com.sermo.model.User;
+import com.sermo.repository.JpaTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Import({MessageExportService.class, JacksonAutoConfiguration.class})
+@TestPropertySource(properties = "sermo.messages.export.fetch-size=2")
+class MessageExportServiceTest extends JpaTestSupport {
+
+    @Autowired
+    private MessageExportService exportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User alice;
+    private Channel channel;
+
+    @BeforeEach
+    void setUp() {
+        alice = user("alice");
+        channel = channel("general", server("server", alice));
+    }
+
+    @Test
+    void writesOneJsonMessagePerLineInHistoryOrder() throws Exception {
+        Long first = save("Zmlyc3Q=", 1L, false);
+        save("Z29uZQ==", 2L, true);
+        Long third = save("dGhpcmQ=", 3L, false);
+        Long fourth = save("Zm91cnRo", 4L, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportNdjson(channel.getId(), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        List<Long> ids = new ArrayList<>();
+        for (String line : lines) {
+            ids.add(objectMapper.readValue(line, MessageDTO.class).getId());
+        }
+        assertThat(ids).containsExactly(first, third, fourth);
+        MessageDTO read = objectMapper.readValue(lines[0], MessageDTO.class);
+        assertThat(read.getSenderUsername()).isEqualTo("alice");
+        assertThat(read.getEncryptedContent()).isEqualTo("Zmlyc3Q=");
+        assertThat(read.getSeq()).isEqualTo(1L);
+    }
+
+    @Test
+    void writesLengthPrefixedBinaryFrames() {
+        Long first = save("Zmlyc3Q=", 1L, false);
+        Long second = save("c2Vjb25k", 2L, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportBinary(channel.getId(), out);
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        List<Long> ids = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            ByteBuffer frame = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            assertThat(frame.get()).isEqualTo(BinaryFrameCodec.MESSAGE);
+            ids.add(frame.getLong());
+        }
+        assertThat(ids).containsExactly(first, second);
+    }
+
+    @Test
+    void skipsRowsWithoutABinaryFormInsteadOfAbortingTheExport() {
+        Long first = save("Zmlyc3Q=", 1L, false);
+        save("not base64!", 2L, false);
+        Long third = save("dGhpcmQ=", 3L, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportBinary(channel.getId(), out);
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        List<Long> ids = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            ids.add(buffer.getLong(buffer.position() + 1));
+            buffer.position(buffer.position() + length);
+        }
+        assertThat(ids).containsExactly(first, third);
+    }
+
+    @Test
+    void streamsALargeChannelWithoutHoldingItInMemory() {
+        int rows = 10_000;
+        String content = Base64.getEncoder().encodeToString(new byte[3 * 1024]);
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 12, 0);
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO messages (id, sender_id, channel_id, encrypted_content, nonce, created_at, seq, version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            IntStream.rangeClosed(1, rows).boxed().collect(Collectors.toList()), 1000, (ps, i) -> {
+                ps.setLong(1, 1_000_000L + i);
+                ps.setLong(2, alice.getId());
+                ps.setLong(3, channel.getId());
+                ps.setString(4, content);
+                ps.setString(5, "bm9uY2U=");
+                ps.setTimestamp(6, Timestamp.valueOf(start.plusSeconds(i)));
+                ps.setLong(7, i);
+                ps.setLong(8, i);
+            });
+        // Embedded H2 otherwise materializes the whole result before returning the first row,
+        // where Postgres streams through the cursor
+        jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION TRUE");
+        long before = retainedHeap();
+        HeapSamplingStream out = new HeapSamplingStream();
+
+        exportService.exportNdjson(channel.getId(), out);
+
+        // Some 40 MB of JSON went through; only the buffer and a row or two should be live at a time
+        assertThat(out.lines).isEqualTo(rows);
+        assertThat(out.bytes).isGreaterThan(rows * 4096L);
+        assertThat(out.maxRetained - before).isLessThan(16L * 1024 * 1024);
+    }
+
+    @Test
+    void abortsWhenTheClientGoesAway() {
+        save("Zmlyc3Q=", 1L, false);
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        // A single row fits the 64 KB buffer, so the failure surfaces on the final flush
+        assertThatThrownBy(() -> exportService.exportNdjson(channel.getId(), closed))
+            .isInstanceOf(UncheckedIOException.class);
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Discards what it is given, measuring the live heap every few megabytes.
+     */
+    private static class HeapSamplingStream extends OutputStream {
+
+        private static final long SAMPLE_EVERY = 4L * 1024 * 1024;
+
+        long bytes;
+        long lines;
+        long maxRetained;
+        private long nextSample = SAMPLE_EVERY;
+
+        @Override
+        public void write(int b) {
+            count(b == '\n' ? 1 : 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int newlines = 0;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    newlines++;
+                }
+            }
+            count(newlines, len);
+        }
+
+        private void count(int newlines, int len) {
+            lines += newlines;
+            bytes += len;
+            if (bytes >= nextSample) {
+                maxRetained = Math.max(maxRetained, retainedHeap());
+                nextSample += SAMPLE_EVERY;
+            }
+        }
+    }
+
+    private Long save(String content, long seq, boolean deleted) {
+        // Spread createdAt so the export order is the insertion order
+        Message message = message(channel, alice, LocalDateTime.of(2026, 1, 1, 12, 0).plusSeconds(seq), seq);
+        message.setEncryptedContent(content);
+        message.setDeletedAt(deleted ? LocalDateTime.now() : null);
+        entityManager.flush();
+        return message.getId();
+    }
+}
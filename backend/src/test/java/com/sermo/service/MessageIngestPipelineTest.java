@@ -0,0 +1,182 @@
+package com.sermo.service;
+
+import com.sermo.dto.MessageDTO;
+import com.sermo.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageIngestPipelineTest {
+
+    private MessageIngestPipeline pipeline;
+    private JdbcTemplate jdbcTemplate;
+    private ChannelSequencer channelSequencer;
+    private RecentMessageCache recentMessageCache;
+    private final List<List<MessageDTO>> batches = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        channelSequencer = mock(ChannelSequencer.class);
+        recentMessageCache = mock(RecentMessageCache.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+            .thenAnswer(invocation -> {
+                List<MessageDTO> rows = new ArrayList<>();
+                for (Object pending : invocation.<Collection<?>>getArgument(1)) {
+                    rows.add(((MessageIngestPipeline.PendingMessage) pending).message());
+                }
+                batches.add(rows);
+                return new int[0][];
+            });
+
+        pipeline = new MessageIngestPipeline();
+        ReflectionTestUtils.setField(pipeline, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(pipeline, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(pipeline, "idGenerator", new SnowflakeIdGenerator(1));
+        ReflectionTestUtils.setField(pipeline, "channelSequencer", channelSequencer);
+        ReflectionTestUtils.setField(pipeline, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pipeline, "recentMessageCache", recentMessageCache);
+        ReflectionTestUtils.setField(pipeline, "enabled", true);
+        ReflectionTestUtils.setField(pipeline, "flushSize", 3);
+        ReflectionTestUtils.setField(pipeline, "flushInterval", 500L);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "workers", 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void flushesAcceptedMessagesInOneBatch() throws Exception {
+        when(channelSequencer.reserve(10L, 2)).thenReturn(6L);
+        when(channelSequencer.reserve(11L, 1)).thenReturn(1L);
+        pipeline.init();
+
+        MessageIngestPipeline.PendingMessage first = accept(10L);
+        MessageIngestPipeline.PendingMessage second = accept(11L);
+        MessageIngestPipeline.PendingMessage third = accept(10L);
+
+        assertThat(first.message().getSeq()).isNull();
+        MessageDTO saved = third.flushed().get(1, TimeUnit.SECONDS);
+        first.flushed().get(1, TimeUnit.SECONDS);
+        second.flushed().get(1, TimeUnit.SECONDS);
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(MessageDTO::getId)
+            .containsExactly(first.message().getId(), second.message().getId(), third.message().getId());
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+        assertThat(saved).isSameAs(third.message());
+        verify(recentMessageCache).append(third.message());
+    }
+
+    @Test
+    void reservesOneRangePerChannelAndBatch() throws Exception {
+        when(channelSequencer.reserve(10L, 2)).thenReturn(6L);
+        when(channelSequencer.reserve(11L, 1)).thenReturn(1L);
+        pipeline.init();
+
+        MessageIngestPipeline.PendingMessage first = accept(10L);
+        MessageIngestPipeline.PendingMessage second = accept(11L);
+        MessageIngestPipeline.PendingMessage third = accept(10L);
+        third.flushed().get(1, TimeUnit.SECONDS);
+
+        // Channel 10 reserved 5..6 in accept order, channel 11 its first sequence
+        assertThat(first.flushed().get().getSeq()).isEqualTo(5L);
+        assertThat(third.flushed().get().getSeq()).isEqualTo(6L);
+        assertThat(second.flushed().get().getSeq()).isEqualTo(1L);
+        assertThat(third.message().getVersion()).isEqualTo(6L);
+        verify(channelSequencer, times(1)).reserve(10L, 2);
+        verify(channelSequencer, times(1)).reserve(11L, 1);
+    }
+
+    @Test
+    void retriesOneByOneWhenTheBatchFails() throws Exception {
+        // Channel 99 does not exist: the batch reservation fails, and so does the row's own retry
+        when(channelSequencer.reserve(eq(10L), anyInt())).thenReturn(1L, 2L, 3L);
+        when(channelSequencer.reserve(eq(99L), anyInt())).thenThrow(new RuntimeException("Channel not found"));
+        pipeline.init();
+
+        MessageIngestPipeline.PendingMessage good = accept(10L);
+        MessageIngestPipeline.PendingMessage bad = accept(99L);
+        MessageIngestPipeline.PendingMessage alsoGood = accept(10L);
+
+        assertThat(good.flushed().get(1, TimeUnit.SECONDS).getSeq()).isEqualTo(2L);
+        assertThat(alsoGood.flushed().get(1, TimeUnit.SECONDS).getSeq()).isEqualTo(3L);
+        assertThatThrownBy(() -> bad.flushed().join())
+            .isInstanceOf(CompletionException.class)
+            .hasRootCauseMessage("Channel not found");
+        verify(jdbcTemplate, times(2)).update(anyString(), any(PreparedStatementSetter.class));
+        verify(recentMessageCache, never()).append(bad.message());
+    }
+
+    @Test
+    void rejectsWithoutBlockingWhenTheQueueIsFull() throws Exception {
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 1);
+        ReflectionTestUtils.setField(pipeline, "flushSize", 1);
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(channelSequencer.reserve(10L, 1)).thenAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+        pipeline.init();
+
+        // The only worker is stuck flushing the first message and the second fills the queue
+        accept(10L);
+        assertThat(flushing.await(1, TimeUnit.SECONDS)).isTrue();
+        accept(10L);
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> accept(10L)).hasMessage("Message queue is full");
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+        release.countDown();
+    }
+
+    @Test
+    void rejectsMessagesWithoutContent() {
+        pipeline.init();
+
+        assertThatThrownBy(() -> pipeline.accept(1L, "alice", 10L, "Y2lwaGVy", null))
+            .hasMessage("Message content and nonce are required");
+    }
+
+    private MessageIngestPipeline.PendingMessage accept(Long channelId) {
+        return pipeline.accept(1L, "alice", channelId, "Y2lwaGVy", "bm9uY2U=");
+    }
+}
@@ -0,0 +1,206 @@
+package com.sermo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sermo.dto.MessageChangeDTO;
+import com.sermo.dto.MessageChangePageDTO;
+import com.sermo.dto.MessageDTO;
+import com.sermo.model.Channel;
+import com.sermo.model.User;
+import com.sermo.repository.JpaTestSupport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Catching up after a disconnect, by replay or through the change feed, while other
+ * clients keep sending: every send commits on its own, as it does in production.
+ */
+@Import({MessageService.class, ChannelSequencer.class, RecentMessageCache.class,
+    JacksonAutoConfiguration.class, MessageResumeTest.Metrics.class, MessageResumeTest.ChangeRecorder.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageResumeTest extends JpaTestSupport {
+
+    @TestConfiguration
+    static class Metrics {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @TestConfiguration
+    static class ChangeRecorder {
+
+        final List<MessageDTO> changes = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        void onMessageChanged(MessageChangedEvent event) {
+            changes.add(event.message());
+        }
+    }
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User sender;
+    private Long channelId;
+
+    @BeforeEach
+    void setUp() {
+        sender = transactionTemplate.execute(status -> user("sender" + System.nanoTime()));
+        channelId = transactionTemplate.execute(status -> channel("general", server("server", sender))).getId();
+    }
+
+    @Test
+    void replaysOnlyWhatWasMissedInSequenceOrder() {
+        send(5);
+
+        assertThat(seqs(messageService.getMessagesSince(channelId, 2, 10))).containsExactly(3L, 4L, 5L);
+        assertThat(messageService.getMessagesSince(channelId, 5, 10)).isEmpty();
+    }
+
+    @Test
+    void givesUpWhenMoreThanTheBudgetWasMissed() {
+        send(5);
+
+        assertThat(messageService.getMessagesSince(channelId, 0, 4)).isNull();
+        assertThat(messageService.getMessagesSince(channelId, 1, 4)).hasSize(4);
+    }
+
+    @Test
+    void servesTheSameReplayFromTheRecentMessageCache() {
+        send(3);
+        // Loads the channel's ring; later sends are appended to it
+        messageService.getChannelMessages(channelId);
+        send(3);
+
+        assertThat(seqs(messageService.getMessagesSince(channelId, 2, 10))).containsExactly(3L, 4L, 5L, 6L);
+        assertThat(messageService.getMessagesSince(channelId, 0, 4)).isNull();
+    }
+
+    @Test
+    void syncingAfterOnePercentWasEditedCostsAFractionOfAReload() throws Exception {
+        List<MessageDTO> sent = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            sent.add(messageService.sendMessage(sender.getId(), channelId, "Y2lwaGVyIHRleHQgb2YgYSBjaGF0IG1lc3NhZ2U=", "bm9uY2U="));
+        }
+        long seen = sent.get(sent.size() - 1).getVersion();
+        for (int i = 0; i < sent.size(); i += 100) {
+            messageService.editMessage(sent.get(i).getId(), sender.getId(), "ZWRpdGVkIGNpcGhlcnRleHQ=", "bm9uY2U=");
+        }
+
+        MessageChangePageDTO changes = messageService.getChanges(channelId, seen, 100);
+        long syncBytes = objectMapper.writeValueAsBytes(changes).length;
+        long reloadBytes = objectMapper.writeValueAsBytes(messageService.getChannelMessages(channelId)).length;
+
+        assertThat(changes.getChanges()).extracting(MessageChangeDTO::getType).containsOnly("EDIT").hasSize(5);
+        assertThat(changes.isHasMore()).isFalse();
+        assertThat(syncBytes * 50).isLessThan(reloadBytes);
+    }
+
+    @Test
+    void publishesEditsAndDeletionsOnceCommitted() {
+        MessageDTO message = messageService.sendMessage(sender.getId(), channelId, "Y2lwaGVy", "bm9uY2U=");
+        changeRecorder.changes.clear();
+
+        messageService.editMessage(message.getId(), sender.getId(), "ZWRpdGVk", "bm9uY2U=");
+        messageService.deleteMessage(message.getId(), sender.getId());
+        transactionTemplate.executeWithoutResult(status -> {
+            messageService.editMessage(send(), sender.getId(), "cm9sbGVkIGJhY2s=", "bm9uY2U=");
+            status.setRollbackOnly();
+        });
+
+        assertThat(changeRecorder.changes).extracting(MessageDTO::getId).containsExactly(message.getId(), message.getId());
+        assertThat(changeRecorder.changes.get(0).getEditedAt()).isNotNull();
+        assertThat(changeRecorder.changes.get(1).getDeletedAt()).isNotNull();
+    }
+
+    @Test
+    void reconnectStormNeverSkipsAMessage() throws Exception {
+        messageService.getChannelMessages(channelId);
+        int senders = 4;
+        int perSender = 40;
+        int resumers = 4;
+        long total = senders * perSender;
+        ExecutorService executor = Executors.newFixedThreadPool(senders + resumers);
+        AtomicBoolean sending = new AtomicBoolean(true);
+        try {
+            List<Future<?>> sends = new ArrayList<>();
+            for (int s = 0; s < senders; s++) {
+                sends.add(executor.submit(() -> send(perSender)));
+            }
+            List<Future<Long>> resumes = new ArrayList<>();
+            for (int r = 0; r < resumers; r++) {
+                resumes.add(executor.submit(() -> {
+                    // Each pass is one reconnect resuming from the last sequence seen
+                    long lastSeen = 0;
+                    while (sending.get() || lastSeen < total) {
+                        List<MessageDTO> missed = messageService.getMessagesSince(channelId, lastSeen, 1000);
+                        for (MessageDTO message : missed) {
+                            assertThat(message.getSeq()).isEqualTo(lastSeen + 1);
+                            lastSeen = message.getSeq();
+                        }
+                    }
+                    return lastSeen;
+                }));
+            }
+
+            for (Future<?> send : sends) {
+                send.get(60, TimeUnit.SECONDS);
+            }
+            sending.set(false);
+            for (Future<Long> resume : resumes) {
+                assertThat(resume.get(60, TimeUnit.SECONDS)).isEqualTo(total);
+            }
+        } finally {
+            sending.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    private Long send() {
+        return messageService.sendMessage(sender.getId(), channelId, "Y2lwaGVy", "bm9uY2U=").getId();
+    }
+
+    private void send(int count) {
+        for (int i = 0; i < count; i++) {
+            messageService.sendMessage(sender.getId(), channelId, "Y2lwaGVy", "bm9uY2U=");
+        }
+    }
+
+    private static List<Long> seqs(List<MessageDTO> messages) {
+        return messages.stream().map(MessageDTO::getSeq).collect(Collectors.toList());
+    }
+}
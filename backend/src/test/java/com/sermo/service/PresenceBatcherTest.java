@@ -0,0 +1,129 @@
+package com.sermo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PresenceBatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PresenceBatcher batcher;
+    private PresenceService presenceService;
+
+    @BeforeEach
+    void setUp() {
+        presenceService = mock(PresenceService.class);
+        batcher = new PresenceBatcher();
+        ReflectionTestUtils.setField(batcher, "presenceService", presenceService);
+        ReflectionTestUtils.setField(batcher, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(batcher, "maxPending", 2);
+        batcher.init();
+    }
+
+    @Test
+    void heartbeatsWithinATickCollapseIntoOneUpdate() {
+        batcher.online(1L, "10");
+        batcher.online(1L, "10");
+        batcher.online(1L, "11");
+
+        batcher.flush();
+
+        assertThat(flushed()).containsExactly(new PresenceService.PresenceUpdate(1L, false, Set.of("10", "11")));
+        assertThat(meterRegistry.summary("sermo.presence.flush.batch.size").totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    void goingOfflineSupersedesEarlierHeartbeats() {
+        batcher.online(1L, "10");
+        batcher.offline(1L);
+
+        batcher.flush();
+
+        assertThat(flushed()).containsExactly(new PresenceService.PresenceUpdate(1L, true, Set.of()));
+    }
+
+    @Test
+    void aHeartbeatAfterGoingOfflineIsKept() {
+        batcher.offline(1L);
+        batcher.online(1L, "12");
+
+        batcher.flush();
+
+        assertThat(flushed()).containsExactly(new PresenceService.PresenceUpdate(1L, true, Set.of("12")));
+    }
+
+    @Test
+    void eachTickOnlyWritesWhatChangedSinceTheLast() {
+        batcher.online(1L, "10");
+        batcher.flush();
+
+        batcher.flush();
+        batcher.online(2L, "10");
+        batcher.flush();
+
+        ArgumentCaptor<List<PresenceService.PresenceUpdate>> batches = captor();
+        verify(presenceService, times(2)).apply(batches.capture());
+        assertThat(batches.getAllValues().get(1)).extracting(PresenceService.PresenceUpdate::userId).containsExactly(2L);
+    }
+
+    @Test
+    void nothingPendingWritesNothing() {
+        batcher.flush();
+
+        verify(presenceService, never()).apply(any());
+    }
+
+    @Test
+    void newUsersBeyondTheLimitAreDropped() {
+        batcher.online(1L, "10");
+        batcher.online(2L, "10");
+
+        batcher.online(3L, "10");
+        // Users already pending can still change
+        batcher.offline(2L);
+        batcher.flush();
+
+        assertThat(flushed()).containsExactlyInAnyOrder(
+            new PresenceService.PresenceUpdate(1L, false, Set.of("10")),
+            new PresenceService.PresenceUpdate(2L, true, Set.of()));
+        assertThat(meterRegistry.counter("sermo.presence.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void aFailedWriteIsCountedAndNotRetried() {
+        doThrow(new RuntimeException("Redis unavailable")).when(presenceService).apply(any());
+        batcher.online(1L, "10");
+        batcher.online(2L, "10");
+
+        batcher.flush();
+        batcher.flush();
+
+        verify(presenceService).apply(any());
+        assertThat(meterRegistry.counter("sermo.presence.dropped").count()).isEqualTo(2);
+    }
+
+    private List<PresenceService.PresenceUpdate> flushed() {
+        ArgumentCaptor<List<PresenceService.PresenceUpdate>> batch = captor();
+        verify(presenceService).apply(batch.capture());
+        return batch.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<PresenceService.PresenceUpdate>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
@@ -0,0 +1,229 @@
+package com.sermo.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceServiceTest {
+
+    private PresenceService presenceService;
+    private RedisTemplate<String, String> redisTemplate;
+    private HashOperations<String, Object, Object> hashOperations;
+    private ZSetOperations<String, String> zSetOperations;
+    private ValueOperations<String, String> valueOperations;
+    private ChannelService channelService;
+    private List<Object> pipelineResults;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        zSetOperations = mock(ZSetOperations.class);
+        valueOperations = mock(ValueOperations.class);
+        channelService = mock(ChannelService.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        // Pipelined callbacks run straight against the mocked template
+        pipelineResults = new ArrayList<>();
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.<SessionCallback<Object>>getArgument(0).execute(redisTemplate);
+            return pipelineResults;
+        });
+
+        presenceService = new PresenceService();
+        ReflectionTestUtils.setField(presenceService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(presenceService, "channelService", channelService);
+    }
+
+    @Test
+    void goingOnlineWritesTheUserHashChannelSetAndServerBuckets() {
+        when(channelService.getServerIds(Set.of(10L))).thenReturn(Map.of(10L, 100L));
+        long before = System.currentTimeMillis();
+
+        presenceService.apply(List.of(online(1L, "10")));
+
+        ArgumentCaptor<String> expiry = ArgumentCaptor.forClass(String.class);
+        verify(hashOperations).put(eq("presence:user:1"), eq("10"), expiry.capture());
+        assertThat(Long.parseLong(expiry.getValue())).isGreaterThanOrEqualTo(before + 60_000);
+        verify(redisTemplate).expire("presence:user:1", 60, TimeUnit.SECONDS);
+        verify(zSetOperations).add("presence:channel:10", "1", Double.parseDouble(expiry.getValue()));
+        verify(redisTemplate).expire("presence:channel:10", 60, TimeUnit.SECONDS);
+        // Current bucket plus the two ahead, each with an expiry
+        verify(valueOperations, times(3)).setBit(anyString(), eq(1L), eq(true));
+        verify(redisTemplate, times(3)).expire(startsWith("presence:server:100:"),
+            eq(120L), eq(TimeUnit.SECONDS));
+        verify(valueOperations, never()).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        verify(redisTemplate, never()).keys(anyString());
+        // Nobody went offline, so there is nothing to read first
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void goingOfflineClearsEveryChannelTheUserWasIn() {
+        when(hashOperations.keys("presence:user:1")).thenReturn(Set.of("10", "11"));
+        pipelineResults.add(Set.of("10", "11"));
+        when(channelService.getServerIds(Set.of(10L, 11L))).thenReturn(Map.of(10L, 100L, 11L, 100L));
+
+        presenceService.apply(List.of(new PresenceService.PresenceUpdate(1L, true, Set.of())));
+
+        verify(zSetOperations).remove("presence:channel:10", "1");
+        verify(zSetOperations).remove("presence:channel:11", "1");
+        verify(redisTemplate).delete("presence:user:1");
+        verify(valueOperations, times(6)).setBit(anyString(), eq(1L), eq(false));
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @Test
+    void aUserCanGoOfflineAndComeBackInTheSameBatch() {
+        when(hashOperations.keys("presence:user:1")).thenReturn(Set.of("10"));
+        pipelineResults.add(Set.of("10"));
+        when(channelService.getServerIds(Set.of(10L, 12L))).thenReturn(Map.of(10L, 100L, 12L, 100L));
+
+        presenceService.apply(List.of(new PresenceService.PresenceUpdate(1L, true, Set.of("12"))));
+
+        // The offline clears first, so the fresh heartbeat survives it
+        InOrder order = inOrder(redisTemplate, zSetOperations, hashOperations, valueOperations);
+        order.verify(zSetOperations).remove("presence:channel:10", "1");
+        order.verify(valueOperations, times(3)).setBit(anyString(), eq(1L), eq(false));
+        order.verify(redisTemplate).delete("presence:user:1");
+        order.verify(hashOperations).put(eq("presence:user:1"), eq("12"), anyString());
+        order.verify(valueOperations, times(3)).setBit(anyString(), eq(1L), eq(true));
+    }
+
+    @Test
+    void aBatchOfUsersTakesTwoRoundTripsAndOneServerLookup() {
+        when(hashOperations.keys("presence:user:2")).thenReturn(Set.of("11"));
+        when(hashOperations.keys("presence:user:3")).thenReturn(Set.of("12"));
+        pipelineResults.add(Set.of("11"));
+        pipelineResults.add(Set.of("12"));
+        when(channelService.getServerIds(any())).thenReturn(Map.of(10L, 100L, 11L, 100L, 12L, 200L));
+
+        presenceService.apply(List.of(
+            online(1L, "10"),
+            new PresenceService.PresenceUpdate(2L, true, Set.of()),
+            new PresenceService.PresenceUpdate(3L, true, Set.of()),
+            online(4L, "10")
+        ));
+
+        verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+        verify(channelService).getServerIds(Set.of(10L, 11L, 12L));
+        verify(zSetOperations).remove("presence:channel:11", "2");
+        verify(zSetOperations).remove("presence:channel:12", "3");
+        verify(zSetOperations).add(eq("presence:channel:10"), eq("1"), anyDouble());
+        verify(zSetOperations).add(eq("presence:channel:10"), eq("4"), anyDouble());
+    }
+
+    @Test
+    void channelsWithoutAServerSkipTheBitmap() {
+        when(channelService.getServerIds(Set.of(10L))).thenReturn(Map.of());
+
+        presenceService.apply(List.of(online(1L, "10")));
+
+        verify(hashOperations).put(eq("presence:user:1"), eq("10"), anyString());
+        verify(valueOperations, never()).setBit(anyString(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void keepsWritingLegacyKeysDuringAMigration() {
+        ReflectionTestUtils.setField(presenceService, "legacyWrites", true);
+        when(channelService.getServerIds(Set.of(10L))).thenReturn(Map.of());
+
+        presenceService.apply(List.of(online(1L, "10")));
+        presenceService.setTyping(1L, "10");
+
+        verify(valueOperations).set("presence:1:10", "online", 60, TimeUnit.SECONDS);
+        verify(valueOperations).set("typing:10:1", "typing", 5, TimeUnit.SECONDS);
+        verify(valueOperations, never()).setBit(anyString(), anyLong(), eq(true));
+    }
+
+    @Test
+    void pagesThroughTheServerBitmapInIdOrder() {
+        RedisStringCommands commands = serverBitmap(3, 9, 10, 40_000);
+
+        assertThat(presenceService.getOnlineInServer(100L, -1, 10)).containsExactly(3L, 9L, 10L, 40_000L);
+        assertThat(presenceService.getOnlineInServer(100L, -1, 2)).containsExactly(3L, 9L);
+        // The cursor is exclusive, even inside a byte
+        assertThat(presenceService.getOnlineInServer(100L, 9, 2)).containsExactly(10L, 40_000L);
+        assertThat(presenceService.getOnlineInServer(100L, 40_000, 10)).isEmpty();
+        verify(commands, atLeastOnce()).getRange(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void readsOnlyThePagesItNeeds() {
+        RedisStringCommands commands = serverBitmap(0, 7, 40_000);
+
+        assertThat(presenceService.getOnlineInServer(100L, -1, 2)).containsExactly(0L, 7L);
+        verify(commands, times(1)).getRange(any(), eq(0L), eq(4095L));
+
+        // Starts at the cursor's byte rather than the beginning of the bitmap
+        assertThat(presenceService.getOnlineInServer(100L, 39_999, 10)).containsExactly(40_000L);
+        verify(commands).getRange(any(), eq(5000L), eq(5000L + 4095));
+        verify(commands, times(2)).getRange(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void anEmptyServerHasNobodyOnline() {
+        serverBitmap();
+
+        assertThat(presenceService.getOnlineInServer(100L, -1, 10)).isEmpty();
+    }
+
+    private static PresenceService.PresenceUpdate online(Long userId, String channelId) {
+        return new PresenceService.PresenceUpdate(userId, false, Set.of(channelId));
+    }
+
+    // Serves GETRANGE over a bitmap with the given user ids set, numbered as Redis numbers bits
+    private RedisStringCommands serverBitmap(int... userIds) {
+        int length = Arrays.stream(userIds).max().orElse(-1) / 8 + 1;
+        byte[] bitmap = new byte[userIds.length == 0 ? 0 : length];
+        for (int userId : userIds) {
+            bitmap[userId / 8] |= (byte) (0x80 >>> (userId % 8));
+        }
+        RedisStringCommands commands = mock(RedisStringCommands.class);
+        when(commands.getRange(any(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long start = invocation.getArgument(1);
+            long end = Math.min(invocation.<Long>getArgument(2), bitmap.length - 1);
+            return start > end ? new byte[0] : Arrays.copyOfRange(bitmap, (int) start, (int) end + 1);
+        });
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.stringCommands()).thenReturn(commands);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+            .thenAnswer(invocation -> invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+        return commands;
+    }
+}
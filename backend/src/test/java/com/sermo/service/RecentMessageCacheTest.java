@@ -0,0 +1,148 @@
+package com.sermo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sermo.dto.MessageDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentMessageCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = newCache(3, 10);
+    }
+
+    @Test
+    void keepsTheNewestMessagesInOrder() {
+        fill(1L, message(1L, 1), message(1L, 2));
+        cache.append(message(1L, 4));
+        cache.append(message(1L, 3));
+
+        RecentMessageCache.Snapshot snapshot = cache.get(1L);
+        assertThat(ids(snapshot)).containsExactly(2L, 3L, 4L);
+        assertThat(snapshot.hasOlder()).isTrue();
+    }
+
+    @Test
+    void missesUntilTheLoadCompletes() {
+        RecentMessageCache.Ring ring = cache.beginLoad(1L);
+        assertThat(cache.get(1L)).isNull();
+
+        cache.fill(ring, List.of(message(1L, 1)), false);
+        assertThat(ids(cache.get(1L))).containsExactly(1L);
+    }
+
+    @Test
+    void appliesAnEditThatRacedTheLoad() {
+        RecentMessageCache.Ring ring = cache.beginLoad(1L);
+        MessageDTO edited = message(1L, 1);
+        edited.setEncryptedContent("edited");
+        edited.setEditedAt(START.plusMinutes(5));
+        edited.setVersion(10L);
+        cache.update(edited);
+
+        // The load read the row before the edit committed
+        cache.fill(ring, List.of(message(1L, 1), message(1L, 2)), false);
+
+        assertThat(cache.get(1L).entries().get(0).message().getEncryptedContent()).isEqualTo("edited");
+    }
+
+    @Test
+    void appliesADeletionThatRacedTheLoad() {
+        RecentMessageCache.Ring ring = cache.beginLoad(1L);
+        MessageDTO tombstone = message(1L, 2);
+        tombstone.setDeletedAt(START.plusMinutes(5));
+        tombstone.setVersion(10L);
+        cache.remove(tombstone);
+
+        cache.fill(ring, List.of(message(1L, 1), message(1L, 2)), false);
+
+        assertThat(ids(cache.get(1L))).containsExactly(1L);
+    }
+
+    @Test
+    void ignoresAnEditOlderThanTheCachedVersion() {
+        MessageDTO latest = message(1L, 1);
+        latest.setEncryptedContent("latest");
+        latest.setVersion(20L);
+        fill(1L, latest);
+
+        MessageDTO stale = message(1L, 1);
+        stale.setEncryptedContent("stale");
+        stale.setEditedAt(START);
+        stale.setVersion(10L);
+        cache.update(stale);
+
+        assertThat(cache.get(1L).entries().get(0).message().getEncryptedContent()).isEqualTo("latest");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedChannels() {
+        cache = newCache(3, 2);
+        fill(1L, message(1L, 1));
+        fill(2L, message(2L, 2));
+        cache.get(1L);
+        fill(3L, message(3L, 3));
+
+        assertThat(cache.contains(1L)).isTrue();
+        assertThat(cache.contains(2L)).isFalse();
+        assertThat(cache.contains(3L)).isTrue();
+    }
+
+    @Test
+    void dropsTheRingForARelayedMessageNotYetPersisted() {
+        fill(1L, message(1L, 1));
+        cache.apply(message(1L, 2));
+        assertThat(ids(cache.get(1L))).containsExactly(1L, 2L);
+
+        MessageDTO writeBehind = message(1L, 3);
+        writeBehind.setSeq(null);
+        writeBehind.setVersion(null);
+        cache.apply(writeBehind);
+
+        assertThat(cache.contains(1L)).isFalse();
+    }
+
+    private void fill(Long channelId, MessageDTO... messages) {
+        cache.fill(cache.beginLoad(channelId), List.of(messages), false);
+    }
+
+    private static RecentMessageCache newCache(int perChannel, int maxChannels) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        RecentMessageCache cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "perChannel", perChannel);
+        ReflectionTestUtils.setField(cache, "maxChannels", maxChannels);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        cache.init();
+        return cache;
+    }
+
+    private static MessageDTO message(Long channelId, long id) {
+        return new MessageDTO(id, 1L, "alice", channelId, "ciphertext", "nonce",
+            START.plusSeconds(id), null, id, id, null);
+    }
+
+    private static List<Long> ids(RecentMessageCache.Snapshot snapshot) {
+        return snapshot.entries().stream()
+            .map(entry -> entry.message().getId())
+            .collect(Collectors.toList());
+    }
+}
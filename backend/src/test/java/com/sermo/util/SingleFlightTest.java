@@ -0,0 +1,122 @@
+package com.sermo.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        Future<String> leader = callers.submit(() -> singleFlight.load(10L, () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "history";
+        }));
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(callers.submit(() -> singleFlight.load(10L, () -> {
+                runs.incrementAndGet();
+                return "duplicate";
+            })));
+        }
+        waitForCoalesced(3);
+        release.countDown();
+
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isEqualTo("history");
+        for (Future<String> follower : followers) {
+            assertThat(follower.get(1, TimeUnit.SECONDS)).isEqualTo("history");
+        }
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(singleFlight.getLoads()).isEqualTo(1);
+        assertThat(singleFlight.getCoalesced()).isEqualTo(3);
+    }
+
+    @Test
+    void waitersSeeTheLeadersFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = callers.submit(() -> singleFlight.load(10L, () -> {
+            started.countDown();
+            await(release);
+            throw new RuntimeException("Channel not found");
+        }));
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        Future<String> follower = callers.submit(() -> singleFlight.load(10L, () -> "unused"));
+        waitForCoalesced(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(1, TimeUnit.SECONDS)).hasRootCauseMessage("Channel not found");
+        assertThatThrownBy(() -> follower.get(1, TimeUnit.SECONDS)).hasRootCauseMessage("Channel not found");
+    }
+
+    @Test
+    void keepsNothingOnceALoadCompletes() {
+        assertThat(singleFlight.load(10L, () -> "first")).isEqualTo("first");
+        assertThat(singleFlight.load(10L, () -> "second")).isEqualTo("second");
+        assertThatThrownBy(() -> singleFlight.load(10L, () -> {
+            throw new RuntimeException("boom");
+        })).hasMessage("boom");
+        assertThat(singleFlight.load(10L, () -> "third")).isEqualTo("third");
+
+        assertThat(singleFlight.getLoads()).isEqualTo(4);
+        assertThat(singleFlight.getCoalesced()).isZero();
+    }
+
+    @Test
+    void loadsDifferentKeysIndependently() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked = callers.submit(() -> singleFlight.load(10L, () -> {
+            await(release);
+            return "ten";
+        }));
+
+        assertThat(singleFlight.load(11L, () -> "eleven")).isEqualTo("eleven");
+        release.countDown();
+        assertThat(blocked.get(1, TimeUnit.SECONDS)).isEqualTo("ten");
+        assertThat(singleFlight.getCoalesced()).isZero();
+    }
+
+    private void waitForCoalesced(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (singleFlight.getCoalesced() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(singleFlight.getCoalesced()).isEqualTo(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
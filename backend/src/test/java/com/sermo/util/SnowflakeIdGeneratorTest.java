@@ -0,0 +1,100 @@
+package com.sermo.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void issuesStrictlyIncreasingIds() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+
+        // More than one millisecond's worth of sequence values
+        long previous = generator.nextId();
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void neverRepeatsAnIdAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Long>>> batches = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                batches.add(threads.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    for (int i = 0; i < 5_000; i++) {
+                        ids.add(generator.nextId());
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> unique = new HashSet<>();
+            for (Future<List<Long>> batch : batches) {
+                unique.addAll(batch.get(5, TimeUnit.SECONDS));
+            }
+            assertThat(unique).hasSize(20_000);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void keepsCountingWhenTheClockGoesBackwards() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        // Pretend the last id was issued a minute from now
+        long ahead = System.currentTimeMillis() - SnowflakeIdGenerator.EPOCH + 60_000;
+        ReflectionTestUtils.setField(generator, "state", new AtomicLong(ahead << 12));
+
+        long id = generator.nextId();
+
+        assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(ahead + SnowflakeIdGenerator.EPOCH);
+        assertThat(generator.nextId()).isGreaterThan(id);
+    }
+
+    @Test
+    void embedsTheNodeId() {
+        long a = new SnowflakeIdGenerator(1).nextId();
+        long b = new SnowflakeIdGenerator(1023).nextId();
+
+        assertThat((a >>> 12) & 1023).isEqualTo(1);
+        assertThat((b >>> 12) & 1023).isEqualTo(1023);
+    }
+
+    @Test
+    void encodesTheIssueTime() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5);
+        long before = System.currentTimeMillis();
+        long id = generator.nextId();
+        long after = System.currentTimeMillis();
+
+        assertThat(SnowflakeIdGenerator.timestampOf(id)).isBetween(before, after);
+        assertThat(SnowflakeIdGenerator.minIdAt(before)).isLessThanOrEqualTo(id);
+        assertThat(SnowflakeIdGenerator.minIdAt(after + 1)).isGreaterThan(id);
+        assertThat(SnowflakeIdGenerator.timestampOf(SnowflakeIdGenerator.minIdAt(before))).isEqualTo(before);
+    }
+
+    @Test
+    void refusesAMissingOrOutOfRangeNodeId() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(1024)).isInstanceOf(IllegalStateException.class);
+        assertThat(new SnowflakeIdGenerator(0).getNodeId()).isZero();
+    }
+}